@@ -0,0 +1,10 @@
+# MD5DiskCacheWrapper reads and builds Glide's data cache keys by reflection.
+-keep class com.bumptech.glide.load.engine.DataCacheKey { *; }
+# MD5DiskCacheWrapper reaches the DiskLruCache of a DiskLruCacheWrapper by reflection.
+-keepclassmembers class com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper {
+    *** getDiskCache();
+}
+# TinyLfuPolicy reads the eviction order of DiskLruCache by reflection.
+-keepclassmembers class com.bumptech.glide.disklrucache.DiskLruCache {
+    *** lruEntries;
+}
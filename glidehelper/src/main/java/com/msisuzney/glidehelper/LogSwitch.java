@@ -2,6 +2,11 @@ package com.msisuzney.glidehelper;
 
 //import com.msisuzney.glidehelper.BuildConfig;
 
+/**
+ * Turns the logcat output of this library on and off, for debugging only. To measure loads in
+ * production, pass a {@link MD5EventListener} to the loader and disk cache factories instead, it
+ * gets the same phases as typed callbacks without building log strings.
+ */
 public class LogSwitch {
     public static boolean LOGGING = false;
 
@@ -0,0 +1,88 @@
+package com.msisuzney.glidehelper;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Key;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import java.io.File;
+import java.net.URL;
+
+/**
+ * Receives the phases of a load, from connecting to verifying the body against its md5 value and
+ * reading it back from the disk cache, so an app can record latency breakdowns in its own sink
+ * instead of parsing logcat.
+ *
+ * <p>Every method does nothing by default, override the ones you need. {@link #NONE} is used when
+ * no listener is given, its calls are empty and nothing is built for them. Callbacks run on Glide's
+ * and this library's worker threads, often several at once, so an implementation must be thread
+ * safe and return quickly, e.g. by taking {@link System#nanoTime()} and bumping a counter.
+ *
+ * <p>Pass a listener to {@link com.msisuzney.glidehelper.fetcher.HttpMD5CheckUrlLoader.Factory} for
+ * the network phases and to {@link com.msisuzney.glidehelper.diskcache.MD5DiskLruCacheFactory} for
+ * the cache phases.
+ */
+public abstract class MD5EventListener {
+    public static final MD5EventListener NONE = new MD5EventListener() {
+    };
+
+    /**
+     * Called before connecting to {@code target}, again for each redirect.
+     */
+    public void connectStart(@NonNull MD5CheckUrl url, @NonNull URL target) {
+    }
+
+    /**
+     * Called once {@code target} has answered with {@code statusCode}, or -1 if the connection
+     * failed.
+     */
+    public void connectEnd(@NonNull MD5CheckUrl url, @NonNull URL target, int statusCode) {
+    }
+
+    public void redirect(@NonNull MD5CheckUrl url, @NonNull URL from, @NonNull URL to) {
+    }
+
+    /**
+     * Called when the first bytes of the body have been read.
+     */
+    public void firstByte(@NonNull MD5CheckUrl url) {
+    }
+
+    /**
+     * Called when the body has been read to the end.
+     */
+    public void bodyEnd(@NonNull MD5CheckUrl url, long byteCount) {
+    }
+
+    /**
+     * Called when a load fails, e.g. because of an http error or an md5 mismatch.
+     */
+    public void fetchFailed(@NonNull MD5CheckUrl url, @NonNull Exception e) {
+    }
+
+    /**
+     * Called before data is hashed, either a downloaded body or a disk cache entry. A body that is
+     * hashed while it downloads reports this before the download.
+     */
+    public void hashStart(@NonNull MD5CheckUrl url) {
+    }
+
+    /**
+     * Called with the verification result once the data has been hashed.
+     */
+    public void hashEnd(@NonNull MD5CheckUrl url, boolean matches) {
+    }
+
+    /**
+     * Called when the disk cache returns a usable entry for {@code key}.
+     */
+    public void cacheHit(@NonNull Key key, @NonNull File file) {
+    }
+
+    /**
+     * Called when the disk cache has no usable entry for {@code key}, including entries that
+     * failed verification.
+     */
+    public void cacheMiss(@NonNull Key key) {
+    }
+}
@@ -0,0 +1,231 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A snapshot of what a {@link MD5DiskCacheWrapper} has done since it was created, see
+ * {@link MD5DiskCacheWrapper#getStats()}.
+ *
+ * <p>Recording is a few atomic increments and two {@link System#nanoTime()} calls per operation,
+ * cheap enough to leave on in production. {@link #toMap()} flattens a snapshot for reporting.
+ */
+public final class CacheStats {
+    private final long lookups;
+    private final long hits;
+    private final long misses;
+    private final long verifiedHits;
+    private final long packedHits;
+    private final long verificationFailures;
+    private final long readErrors;
+    private final long hashedBytes;
+    private final long puts;
+    private final long packedPuts;
+    private final long failedPuts;
+    private final long writtenBytes;
+    private final long size;
+    private final long maxSize;
+    private final LatencyHistogram lookupLatency;
+    private final LatencyHistogram hashLatency;
+    private final LatencyHistogram readLatency;
+
+    CacheStats(Recorder recorder, long size, long maxSize) {
+        lookups = recorder.lookups.get();
+        hits = recorder.hits.get();
+        misses = recorder.misses.get();
+        verifiedHits = recorder.verifiedHits.get();
+        packedHits = recorder.packedHits.get();
+        verificationFailures = recorder.verificationFailures.get();
+        readErrors = recorder.readErrors.get();
+        hashedBytes = recorder.hashedBytes.get();
+        puts = recorder.puts.get();
+        packedPuts = recorder.packedPuts.get();
+        failedPuts = recorder.failedPuts.get();
+        writtenBytes = recorder.writtenBytes.get();
+        this.size = size;
+        this.maxSize = maxSize;
+        lookupLatency = recorder.lookupLatency.snapshot();
+        hashLatency = recorder.hashLatency.snapshot();
+        readLatency = recorder.readLatency.snapshot();
+    }
+
+    /**
+     * Returns the number of {@link MD5DiskCacheWrapper#get} calls.
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Returns the number of lookups that returned an entry.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that found nothing, including entries that failed verification or
+     * couldn't be read.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of hits that were known to be verified and weren't hashed.
+     */
+    public long getVerifiedHits() {
+        return verifiedHits;
+    }
+
+    /**
+     * Returns the number of hits served from pack files.
+     */
+    public long getPackedHits() {
+        return packedHits;
+    }
+
+    /**
+     * Returns the number of entries that didn't match their md5 value. Packed entries are checked
+     * when they are decoded, so their failures were already counted as hits.
+     */
+    public long getVerificationFailures() {
+        return verificationFailures;
+    }
+
+    /**
+     * Returns the number of entries that couldn't be read.
+     */
+    public long getReadErrors() {
+        return readErrors;
+    }
+
+    public long getHashedBytes() {
+        return hashedBytes;
+    }
+
+    /**
+     * Returns the number of {@link MD5DiskCacheWrapper#put} calls that wrote an entry.
+     */
+    public long getPuts() {
+        return puts;
+    }
+
+    /**
+     * Returns the number of puts that went to pack files.
+     */
+    public long getPackedPuts() {
+        return packedPuts;
+    }
+
+    /**
+     * Returns the number of puts whose writer failed, including md5 mismatches.
+     */
+    public long getFailedPuts() {
+        return failedPuts;
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * Returns the bytes used by the cache, including pack files, or 0 if its journal couldn't be
+     * opened.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public float getHitRate() {
+        return lookups == 0 ? 0 : (float) hits / lookups;
+    }
+
+    /**
+     * Returns the time {@link MD5DiskCacheWrapper#get} took, verification included.
+     */
+    @NonNull
+    public LatencyHistogram getLookupLatency() {
+        return lookupLatency;
+    }
+
+    /**
+     * Returns the time taken to verify an entry against its md5 value.
+     */
+    @NonNull
+    public LatencyHistogram getHashLatency() {
+        return hashLatency;
+    }
+
+    /**
+     * Returns the time taken to map an entry into memory, or to read it from a pack file.
+     */
+    @NonNull
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    /**
+     * Returns every counter, plus the count, mean and p50/p99 of each histogram in microseconds.
+     */
+    @NonNull
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("lookups", lookups);
+        map.put("hits", hits);
+        map.put("misses", misses);
+        map.put("verified_hits", verifiedHits);
+        map.put("packed_hits", packedHits);
+        map.put("verification_failures", verificationFailures);
+        map.put("read_errors", readErrors);
+        map.put("hashed_bytes", hashedBytes);
+        map.put("puts", puts);
+        map.put("packed_puts", packedPuts);
+        map.put("failed_puts", failedPuts);
+        map.put("written_bytes", writtenBytes);
+        map.put("size", size);
+        map.put("max_size", maxSize);
+        putHistogram(map, "lookup", lookupLatency);
+        putHistogram(map, "hash", hashLatency);
+        putHistogram(map, "read", readLatency);
+        return map;
+    }
+
+    private static void putHistogram(Map<String, Long> map, String name, LatencyHistogram histogram) {
+        map.put(name + "_count", histogram.getCount());
+        map.put(name + "_mean_us", histogram.getMeanMicros());
+        map.put(name + "_p50_us", histogram.getPercentileMicros(0.5));
+        map.put(name + "_p99_us", histogram.getPercentileMicros(0.99));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CacheStats" + toMap();
+    }
+
+    static final class Recorder {
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong verifiedHits = new AtomicLong();
+        final AtomicLong packedHits = new AtomicLong();
+        final AtomicLong verificationFailures = new AtomicLong();
+        final AtomicLong readErrors = new AtomicLong();
+        final AtomicLong hashedBytes = new AtomicLong();
+        final AtomicLong puts = new AtomicLong();
+        final AtomicLong packedPuts = new AtomicLong();
+        final AtomicLong failedPuts = new AtomicLong();
+        final AtomicLong writtenBytes = new AtomicLong();
+        final LatencyHistogram.Recorder lookupLatency = new LatencyHistogram.Recorder();
+        final LatencyHistogram.Recorder hashLatency = new LatencyHistogram.Recorder();
+        final LatencyHistogram.Recorder readLatency = new LatencyHistogram.Recorder();
+    }
+}
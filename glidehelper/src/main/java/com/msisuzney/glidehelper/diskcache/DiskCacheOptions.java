@@ -0,0 +1,116 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.util.Preconditions;
+import com.msisuzney.glidehelper.MD5EventListener;
+
+/**
+ * How a {@link MD5DiskCacheWrapper} stores and verifies its entries, e.g.
+ *
+ * <pre>{@code
+ * builder.setDiskCache(new MD5DiskLruCacheFactory(cacheDirectoryGetter, size, 0,
+ *         new DiskCacheOptions.Builder().setMemoryMapped(true).setFrequencyAware(true).build()));
+ * }</pre>
+ */
+public final class DiskCacheOptions {
+    static final DiskCacheOptions DEFAULT = new Builder().build();
+
+    private final boolean memoryMapped;
+    private final boolean frequencyAware;
+    private final int packThreshold;
+    private final MD5EventListener eventListener;
+
+    private DiskCacheOptions(boolean memoryMapped, boolean frequencyAware, int packThreshold,
+                             MD5EventListener eventListener) {
+        this.memoryMapped = memoryMapped;
+        this.frequencyAware = frequencyAware;
+        this.packThreshold = packThreshold;
+        this.eventListener = eventListener;
+    }
+
+    boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    boolean isFrequencyAware() {
+        return frequencyAware;
+    }
+
+    int getPackThreshold() {
+        return packThreshold;
+    }
+
+    MD5EventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     * Returns these options without memory mapping.
+     */
+    DiskCacheOptions withoutMemoryMapping() {
+        return memoryMapped ? new DiskCacheOptions(false, frequencyAware, packThreshold, eventListener) : this;
+    }
+
+    public static class Builder {
+        private boolean memoryMapped;
+        private boolean frequencyAware;
+        private int packThreshold;
+        private MD5EventListener eventListener = MD5EventListener.NONE;
+
+        /**
+         * If true, entries that have to be verified are mapped into memory and hashed there, the
+         * mapped buffer is then handed to {@link MappedByteBufferFileLoader} so Glide decodes from
+         * it without reading the file again. The loader must be registered.
+         *
+         * <p>Defaults to false.
+         */
+        public Builder setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+
+        /**
+         * If true, entries that are read often, e.g. home screen posters, are kept over entries
+         * that were only read recently, see {@link TinyLfuPolicy}.
+         *
+         * <p>Defaults to false.
+         */
+        public Builder setFrequencyAware(boolean frequencyAware) {
+            this.frequencyAware = frequencyAware;
+            return this;
+        }
+
+        /**
+         * Entries up to this many bytes are appended to shared pack files instead of getting a file
+         * each, see {@link PackFileStore}. A quarter of the cache size is set aside for them.
+         * Packed entries can only be read through {@link MappedByteBufferFileLoader}, which must be
+         * registered, otherwise {@link MD5DiskCacheWrapper#get} and {@link MD5DiskCacheWrapper#put}
+         * throw. An entry Glide fetches again because its packed copy couldn't be read, e.g. by a
+         * decoder that needs an InputStream, is stored as a regular file from then on.
+         *
+         * <p>Defaults to 0, which disables packing.
+         */
+        public Builder setPackThreshold(int packThreshold) {
+            if (packThreshold < 0) {
+                throw new IllegalArgumentException("packThreshold must not be negative");
+            }
+            this.packThreshold = packThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the listener told about hits, misses and md5 checks, see {@link MD5EventListener}.
+         *
+         * <p>Defaults to {@link MD5EventListener#NONE}.
+         */
+        public Builder setEventListener(@NonNull MD5EventListener eventListener) {
+            this.eventListener = Preconditions.checkNotNull(eventListener);
+            return this;
+        }
+
+        public DiskCacheOptions build() {
+            return new DiskCacheOptions(memoryMapped, frequencyAware, packThreshold, eventListener);
+        }
+    }
+}
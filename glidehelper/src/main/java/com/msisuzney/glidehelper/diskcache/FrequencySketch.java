@@ -0,0 +1,75 @@
+package com.msisuzney.glidehelper.diskcache;
+
+/**
+ * A count-min sketch of how often keys were accessed recently, 4 bits per counter, 4 counters per
+ * key, 16 counters packed into each long.
+ *
+ * <p>Counters saturate at 15. Once the number of increments reaches ten times the table size every
+ * counter is halved, so the sketch follows what is popular now rather than what was popular once.
+ */
+final class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final long HALVE_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97CB3127, 0xB1AB2F1D, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    // Guarded by this.
+    private int additions;
+
+    /**
+     * @param expectedEntries roughly how many distinct keys the sketch has to tell apart.
+     */
+    FrequencySketch(int expectedEntries) {
+        int length = Integer.highestOneBit(Math.max(16, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * length;
+    }
+
+    synchronized int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int h = mix(hash, i);
+            int shift = nibble(h) << 2;
+            frequency = Math.min(frequency, (int) ((table[h & tableMask] >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    synchronized void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int h = mix(hash, i);
+            int index = h & tableMask;
+            int shift = nibble(h) << 2;
+            if (((table[index] >>> shift) & 0xF) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            halve();
+        }
+    }
+
+    private void halve() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & HALVE_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static int mix(int hash, int i) {
+        int h = (hash + SEEDS[i]) * SEEDS[i];
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Picks the counter within a long from bits the table index doesn't use.
+     */
+    private static int nibble(int h) {
+        return (h * 0x9E3779B9) >>> 28;
+    }
+}
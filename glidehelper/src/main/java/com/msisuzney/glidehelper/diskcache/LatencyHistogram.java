@@ -0,0 +1,103 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A snapshot of how long an operation took, in buckets of powers of two microseconds: bucket 0
+ * counts operations under 1us, bucket {@code i} those from 2^(i-1) up to 2^i us, and the last bucket
+ * everything longer.
+ */
+public final class LatencyHistogram {
+    static final int BUCKET_COUNT = 25;
+
+    private final long[] counts;
+    private final long totalNanos;
+
+    LatencyHistogram(long[] counts, long totalNanos) {
+        this.counts = counts;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Returns the upper bound of bucket {@code index} in microseconds, exclusive, or
+     * {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public static long getBucketUpperBoundMicros(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << index;
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    public long getBucket(int index) {
+        return counts[index];
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        return count;
+    }
+
+    public long getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : totalNanos / count / 1000;
+    }
+
+    /**
+     * Returns the upper bound of the bucket the {@code percentile} falls in, e.g. 0.99 for p99, in
+     * microseconds. 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getBucketUpperBoundMicros(i);
+            }
+        }
+        return getBucketUpperBoundMicros(counts.length - 1);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "{count=" + getCount() + ", meanUs=" + getMeanMicros() + ", p50Us<" + getPercentileMicros(0.5)
+                + ", p99Us<" + getPercentileMicros(0.99) + '}';
+    }
+
+    /**
+     * Records latencies without locking, {@link #snapshot()} may tear between buckets but every
+     * bucket is exact.
+     */
+    static final class Recorder {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = micros <= 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+            counts.incrementAndGet(bucket);
+            totalNanos.addAndGet(nanos);
+        }
+
+        LatencyHistogram snapshot() {
+            long[] snapshot = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            return new LatencyHistogram(snapshot, totalNanos.get());
+        }
+    }
+}
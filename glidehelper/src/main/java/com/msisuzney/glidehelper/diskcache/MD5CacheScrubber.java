@@ -0,0 +1,375 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Verifies the disk cache of a {@link MD5DiskLruCacheFactory} in the background, so corrupt
+ * entries are found before a request waits on them and good entries are already known to be good
+ * when they are read.
+ *
+ * <p>Every entry whose md5 value is known to {@link MD5DiskCacheWrapper} is hashed again, the ones
+ * that were never verified first, then those that were verified longest ago. Entries that match
+ * are recorded as verified, entries that don't are evicted. Entries are hashed in batches of
+ * {@code batchSize} with a pause of {@code batchDelayMillis} between batches, on a background
+ * priority thread.
+ *
+ * <p>Start it when the app is idle and {@link #pause()} it when it isn't:
+ * <pre>
+ *     MD5CacheScrubber scrubber = new MD5CacheScrubber(diskCacheFactory);
+ *     scrubber.start(listener);
+ * </pre>
+ */
+public final class MD5CacheScrubber {
+    private static final String TAG = "MD5CacheScrubber";
+    private static final int DEFAULT_BATCH_SIZE = 8;
+    private static final long DEFAULT_BATCH_DELAY_MILLIS = 500;
+
+    private final MD5DiskLruCacheFactory diskCacheFactory;
+    private final int batchSize;
+    private final long batchDelayMillis;
+
+    // Guarded by this.
+    @Nullable
+    private Thread thread;
+    private boolean paused;
+    private boolean stopped;
+    private int total;
+    private int checked;
+    private int verified;
+    private int corrupt;
+    private int skipped;
+    private long bytes;
+    private long hashNanos;
+
+    public MD5CacheScrubber(@NonNull MD5DiskLruCacheFactory diskCacheFactory) {
+        this(diskCacheFactory, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param diskCacheFactory the factory given to {@link com.bumptech.glide.GlideBuilder#setDiskCache}.
+     * @param batchSize        the number of entries hashed between two pauses.
+     * @param batchDelayMillis the pause between two batches.
+     */
+    public MD5CacheScrubber(@NonNull MD5DiskLruCacheFactory diskCacheFactory, int batchSize,
+                            long batchDelayMillis) {
+        if (batchSize <= 0 || batchDelayMillis < 0) {
+            throw new IllegalArgumentException("batchSize must be positive and batchDelayMillis not negative");
+        }
+        this.diskCacheFactory = diskCacheFactory;
+        this.batchSize = batchSize;
+        this.batchDelayMillis = batchDelayMillis;
+    }
+
+    /**
+     * Starts a pass over the cache, unless one is already running. Does nothing if Glide hasn't
+     * built its disk cache yet.
+     *
+     * @param listener called on the scrubber thread.
+     */
+    public synchronized void start(@Nullable final Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        final MD5DiskCacheWrapper diskCache = diskCacheFactory.getDiskCache();
+        if (diskCache == null) {
+            if (LogSwitch.LOGGING) {
+                Log.d(TAG, "disk cache not built yet");
+            }
+            return;
+        }
+        paused = false;
+        stopped = false;
+        total = checked = verified = corrupt = skipped = 0;
+        bytes = hashNanos = 0;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    scrub(diskCache, listener);
+                } finally {
+                    synchronized (MD5CacheScrubber.this) {
+                        thread = null;
+                    }
+                }
+            }
+        }, "md5-cache-scrubber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Pauses the running pass after the entry being hashed.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Ends the running pass after the entry being hashed, the listener isn't told it completed.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    @NonNull
+    public synchronized Progress getProgress() {
+        return new Progress(total, checked, verified, corrupt, skipped, bytes, hashNanos, paused);
+    }
+
+    private void scrub(MD5DiskCacheWrapper diskCache, @Nullable Listener listener) {
+        VerifiedEntryIndex index = diskCache.getVerifiedEntryIndex();
+        List<String> names = index.getScrubOrder();
+        synchronized (this) {
+            total = names.size();
+        }
+        int inBatch = 0;
+        for (String name : names) {
+            if (inBatch == batchSize) {
+                inBatch = 0;
+                notifyProgress(listener);
+                if (!sleep(batchDelayMillis)) {
+                    return;
+                }
+            }
+            if (!awaitResumed()) {
+                return;
+            }
+            scrubEntry(diskCache, index, new File(diskCache.getDirectory(), name));
+            inBatch++;
+        }
+        notifyProgress(listener);
+        if (listener != null && !isStopped()) {
+            listener.onComplete(getProgress());
+        }
+    }
+
+    private void scrubEntry(MD5DiskCacheWrapper diskCache, VerifiedEntryIndex index, File file) {
+        VerifiedEntryIndex.Entry entry = index.get(file);
+        ChecksumAlgorithm algorithm = entry == null ? null : ChecksumAlgorithm.forName(entry.algorithm);
+        byte[] expected = entry == null ? null : ChecksumAlgorithm.decodeHex(entry.md5);
+        if (algorithm == null || expected == null) {
+            // Evicted or replaced since the pass started, or written by a newer version.
+            onChecked(0, 0, false, false);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean matches;
+        try {
+            matches = algorithm.verify(file, expected);
+        } catch (FileNotFoundException e) {
+            onChecked(0, 0, false, false);
+            return;
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to read " + file, e);
+            }
+            onChecked(0, 0, false, false);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        // The file may have been rewritten while it was hashed, only trust the result for the
+        // entry that was hashed.
+        if (index.get(file) != entry) {
+            onChecked(entry.length, elapsed, false, false);
+            return;
+        }
+        if (matches) {
+            index.markVerified(file, entry);
+        } else {
+            if (LogSwitch.LOGGING) {
+                Log.i(TAG, "checksum mismatch, evict " + file);
+            }
+            try {
+                diskCache.evict(file);
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "Failed to evict " + file, e);
+                }
+            }
+        }
+        onChecked(entry.length, elapsed, matches, !matches);
+    }
+
+    private synchronized void onChecked(long length, long elapsedNanos, boolean isVerified, boolean isCorrupt) {
+        checked++;
+        if (isVerified) {
+            verified++;
+        } else if (isCorrupt) {
+            corrupt++;
+        } else {
+            skipped++;
+        }
+        bytes += length;
+        hashNanos += elapsedNanos;
+    }
+
+    private void notifyProgress(@Nullable Listener listener) {
+        Progress progress = getProgress();
+        if (LogSwitch.LOGGING) {
+            Log.d(TAG, progress.toString());
+        }
+        if (listener != null) {
+            listener.onProgress(progress);
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Blocks while paused, returns false once stopped.
+     */
+    private synchronized boolean awaitResumed() {
+        while (paused && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return !stopped;
+    }
+
+    /**
+     * Waits between two batches, returns false once stopped.
+     */
+    private synchronized boolean sleep(long millis) {
+        long end = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while (remaining > 0 && !stopped) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            remaining = end - System.currentTimeMillis();
+        }
+        return !stopped;
+    }
+
+    /**
+     * Receives the progress of a pass.
+     */
+    public interface Listener {
+        /**
+         * Called after every batch, including the last one.
+         */
+        void onProgress(@NonNull Progress progress);
+
+        /**
+         * Called once every entry has been checked, unless the pass was stopped.
+         */
+        void onComplete(@NonNull Progress progress);
+    }
+
+    /**
+     * A snapshot of the progress of a pass.
+     */
+    public static final class Progress {
+        private final int total;
+        private final int checked;
+        private final int verified;
+        private final int corrupt;
+        private final int skipped;
+        private final long bytes;
+        private final long hashNanos;
+        private final boolean paused;
+
+        Progress(int total, int checked, int verified, int corrupt, int skipped, long bytes,
+                 long hashNanos, boolean paused) {
+            this.total = total;
+            this.checked = checked;
+            this.verified = verified;
+            this.corrupt = corrupt;
+            this.skipped = skipped;
+            this.bytes = bytes;
+            this.hashNanos = hashNanos;
+            this.paused = paused;
+        }
+
+        /**
+         * Returns the number of entries the pass covers.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        public int getChecked() {
+            return checked;
+        }
+
+        /**
+         * Returns the number of entries that matched their md5 value.
+         */
+        public int getVerified() {
+            return verified;
+        }
+
+        /**
+         * Returns the number of entries that didn't match and were evicted.
+         */
+        public int getCorrupt() {
+            return corrupt;
+        }
+
+        /**
+         * Returns the number of entries that were gone, changed or unreadable when their turn came.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns the number of bytes hashed.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the hashing throughput, not counting the pauses between batches.
+         */
+        public long getBytesPerSecond() {
+            return hashNanos == 0 ? 0 : bytes * 1000000000L / hashNanos;
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public boolean isDone() {
+            return checked == total;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{total=" + total + ", checked=" + checked + ", verified=" + verified
+                    + ", corrupt=" + corrupt + ", skipped=" + skipped + ", bytes=" + bytes
+                    + ", bytesPerSecond=" + getBytesPerSecond() + ", paused=" + paused + '}';
+        }
+    }
+}
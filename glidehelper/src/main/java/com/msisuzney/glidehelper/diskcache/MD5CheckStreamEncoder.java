@@ -0,0 +1,96 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Encoder;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.fetcher.MD5CheckInputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An {@link Encoder} that writes an {@link InputStream} to the data cache like Glide's
+ * {@link com.bumptech.glide.load.model.StreamEncoder}, but for a {@link MD5CheckInputStream} it
+ * only reports success when the written bytes match the md5 value. {@link MD5DiskCacheWrapper}
+ * aborts the edit otherwise, so the body is read, hashed and written in one pass.
+ *
+ * <p>Register it ahead of the default encoder:
+ * <pre>
+ * registry.prepend(InputStream.class, new MD5CheckStreamEncoder(glide.getArrayPool()));
+ * </pre>
+ */
+public class MD5CheckStreamEncoder implements Encoder<InputStream> {
+    private static final String TAG = "MD5StreamEncoder";
+    /**
+     * The md5 value of the last verified write on this thread, handed to
+     * {@link MD5DiskCacheWrapper#put} so it doesn't have to hash the entry again when it's read.
+     */
+    private static final ThreadLocal<String> VERIFIED_MD5 = new ThreadLocal<>();
+
+    private final ArrayPool byteArrayPool;
+
+    public MD5CheckStreamEncoder(ArrayPool byteArrayPool) {
+        this.byteArrayPool = byteArrayPool;
+    }
+
+    @Override
+    public boolean encode(@NonNull InputStream data, @NonNull File file, @NonNull Options options) {
+        byte[] buffer = byteArrayPool.get(ArrayPool.STANDARD_BUFFER_SIZE_BYTES, byte[].class);
+        boolean success = false;
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(file);
+            int read;
+            while ((read = data.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+            os.close();
+            success = true;
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.d(TAG, "Failed to encode data onto the OutputStream", e);
+            }
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // Do nothing.
+                }
+            }
+            byteArrayPool.put(buffer);
+        }
+
+        if (success && data instanceof MD5CheckInputStream) {
+            MD5CheckInputStream md5CheckInputStream = (MD5CheckInputStream) data;
+            success = md5CheckInputStream.isVerified();
+            if (success) {
+                VERIFIED_MD5.set(md5CheckInputStream.getMd5Value());
+            } else if (LogSwitch.LOGGING) {
+                Log.i(TAG, "md5 checksum failed, abort writing " + file);
+            }
+        }
+        return success;
+    }
+
+    static void clearVerified() {
+        VERIFIED_MD5.remove();
+    }
+
+    /**
+     * Returns and clears the md5 value recorded by the last verified write on this thread.
+     */
+    static String takeVerified() {
+        String md5 = VERIFIED_MD5.get();
+        VERIFIED_MD5.remove();
+        return md5;
+    }
+}
@@ -3,40 +3,129 @@ package com.msisuzney.glidehelper.diskcache;
 import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.disklrucache.DiskLruCache;
 import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.engine.cache.DiskCache;
 import com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper;
+import com.bumptech.glide.load.engine.cache.SafeKeyGenerator;
+import com.bumptech.glide.signature.EmptySignature;
+import com.bumptech.glide.util.ByteBufferUtil;
 import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.MD5EventListener;
 import com.msisuzney.glidehelper.model.MD5CheckUrl;
-import com.msisuzney.glidehelper.utils.MD5Utils;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 
 public class MD5DiskCacheWrapper extends DiskLruCacheWrapper {
     private static final String TAG = "GlideDiskLruCache";
-    private final Class<?> dataCacheKeyClass;
-    private final Method getSourceKeyMethod;
+    //DiskLruCache里每个entry只有一个value，文件名是key加上value的下标
+    private static final String ENTRY_FILE_SUFFIX = ".0";
+    private static final int PACK_SIZE_DIVISOR = 4;
+    private final File directory;
+    private final long maxSize;
+    private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+    private final VerifiedEntryIndex verifiedEntryIndex;
+    private final boolean memoryMapped;
+    @Nullable
+    private final TinyLfuPolicy frequencyPolicy;
+    @Nullable
+    private final PackFileStore packFileStore;
+    private final int packThreshold;
+    private final CacheStats.Recorder stats = new CacheStats.Recorder();
+    private final MD5EventListener eventListener;
 
     public MD5DiskCacheWrapper(File directory, long maxSize) {
-        super(directory, maxSize);
+        this(directory, maxSize, DiskCacheOptions.DEFAULT);
+    }
+
+    /**
+     * @param options whether entries are memory mapped, evicted by frequency or packed, and who is
+     *                told about hits and misses, see {@link DiskCacheOptions}.
+     */
+    public MD5DiskCacheWrapper(File directory, long maxSize, @NonNull DiskCacheOptions options) {
+        this(directory, maxSize, options.isMemoryMapped(), options.isFrequencyAware(), options.getPackThreshold(),
+                options.getEventListener());
+    }
+
+    private MD5DiskCacheWrapper(File directory, long maxSize, boolean memoryMapped, boolean frequencyAware,
+                                int packThreshold, MD5EventListener eventListener) {
+        super(directory, packThreshold > 0 ? maxSize - maxSize / PACK_SIZE_DIVISOR : maxSize);
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.memoryMapped = memoryMapped;
+        this.packThreshold = packThreshold;
+        this.eventListener = eventListener;
+        packFileStore = packThreshold > 0 ? new PackFileStore(directory, maxSize / PACK_SIZE_DIVISOR, stats) : null;
+        frequencyPolicy = frequencyAware ? new TinyLfuPolicy(maxSize) : null;
+        verifiedEntryIndex = new VerifiedEntryIndex(directory);
+        GlideInternals.check();
+    }
+
+    /**
+     * Opens the DiskLruCache journal and loads the verified index, which would otherwise happen on
+     * the first {@link #get(Key)} or {@link #put(Key, Writer)}. Those wait for this if it is still
+     * running on another thread.
+     */
+    void warmUp() {
+        long startUps = 0;
+        if (LogSwitch.LOGGING) {
+            startUps = SystemClock.uptimeMillis();
+        }
         try {
-            //DataCacheKey不能访问，只能反射了
-            dataCacheKeyClass = Class.forName("com.bumptech.glide.load.engine.DataCacheKey");
-            getSourceKeyMethod = dataCacheKeyClass.getDeclaredMethod("getSourceKey");
-            getSourceKeyMethod.setAccessible(true);
-        } catch (ClassNotFoundException e) {
-            throw new IllegalStateException(e);
-        } catch (NoSuchMethodException e) {
-            throw new IllegalStateException(e);
+            getDiskLruCache();
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to open the disk cache", e);
+            }
+            return;
+        }
+        verifiedEntryIndex.load();
+        if (packFileStore != null) {
+            packFileStore.load();
+        }
+        if (LogSwitch.LOGGING) {
+            Log.d(TAG, "disk cache warmed up in " + (SystemClock.uptimeMillis() - startUps) + "ms");
         }
     }
 
     @Override
     public File get(Key key) {
+        long start = System.nanoTime();
+        stats.lookups.incrementAndGet();
+        File file = getVerified(key);
+        (file != null ? stats.hits : stats.misses).incrementAndGet();
+        stats.lookupLatency.record(System.nanoTime() - start);
+        if (file != null) {
+            eventListener.cacheHit(key, file);
+        } else {
+            eventListener.cacheMiss(key);
+        }
+        return file;
+    }
+
+    private File getVerified(Key key) {
+        if (frequencyPolicy != null) {
+            frequencyPolicy.recordAccess(key);
+        }
+        if (packFileStore != null) {
+            File handle = packFileStore.getHandle(safeKeyGenerator.getSafeKey(key));
+            if (handle != null) {
+                checkPackLoaderRegistered();
+                //写入pack前已经校验过，读取时由MappedByteBufferFileLoader核对摘要
+                stats.packedHits.incrementAndGet();
+                return handle;
+            }
+        }
         File file = super.get(key);
         if (file == null) {
             return null;
@@ -46,41 +135,267 @@ public class MD5DiskCacheWrapper extends DiskLruCacheWrapper {
             startUps = SystemClock.uptimeMillis();
         }
 
-        //排除ResourceCacheKey
-        if (key.getClass().isAssignableFrom(dataCacheKeyClass)) {
-            Key sourceKey = null;
-            try {
-                sourceKey = (Key) getSourceKeyMethod.invoke(key);
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
-            }
-            if (sourceKey instanceof MD5CheckUrl) {
-                MD5CheckUrl md5CheckUrl = (MD5CheckUrl) sourceKey;
-                String md5Param = md5CheckUrl.getMd5Value();
-
-                String sum = MD5Utils.encode(file).toLowerCase();
+        MD5CheckUrl md5CheckUrl = getMD5CheckUrl(key);
+        if (md5CheckUrl != null) {
+            String md5Param = md5CheckUrl.getMd5Value();
+            //之前已经校验过（写入时或上次读取时），文件没变就不用再算一遍
+            if (verifiedEntryIndex.isVerified(file, md5Param)) {
                 if (LogSwitch.LOGGING) {
-                    Log.d(TAG, "checksum:" + sum + ",md5Param:" + md5Param);
+                    Log.d(TAG, "md5 checksum skipped, verified before");
                 }
-                if (md5Param.equals(sum)) {
-                    if (LogSwitch.LOGGING) {
-                        Log.d(TAG, "md5 checksum ok cost:" + (SystemClock.uptimeMillis() - startUps) + "ms");
+                stats.verifiedHits.incrementAndGet();
+                return file;
+            }
+
+            boolean matches;
+            eventListener.hashStart(md5CheckUrl);
+            try {
+                if (memoryMapped) {
+                    //映射一次文件，校验和解码都用这块内存
+                    long readStart = System.nanoTime();
+                    ByteBuffer buffer = ByteBufferUtil.fromFile(file);
+                    long hashStart = System.nanoTime();
+                    stats.readLatency.record(hashStart - readStart);
+                    matches = md5CheckUrl.getChecksumAlgorithm().verify(buffer, md5CheckUrl.getExpectedDigest());
+                    stats.hashLatency.record(System.nanoTime() - hashStart);
+                    if (matches) {
+                        MappedFileHandoff.offer(file, buffer);
                     }
-                    return file;
                 } else {
-                    if (LogSwitch.LOGGING) {
-                        Log.i(TAG, "md5 checksum cost:" + (SystemClock.uptimeMillis() - startUps) + "ms");
-                    }
-                    return null;
+                    long hashStart = System.nanoTime();
+                    matches = md5CheckUrl.getChecksumAlgorithm().verify(file, md5CheckUrl.getExpectedDigest());
+                    stats.hashLatency.record(System.nanoTime() - hashStart);
+                }
+                stats.hashedBytes.addAndGet(file.length());
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "Failed to read " + file, e);
                 }
+                stats.readErrors.incrementAndGet();
+                eventListener.hashEnd(md5CheckUrl, false);
+                return null;
+            }
+            eventListener.hashEnd(md5CheckUrl, matches);
+            if (LogSwitch.LOGGING) {
+                Log.d(TAG, "checksum matches:" + matches + ",md5Param:" + md5Param);
+            }
+            if (matches) {
+                verifiedEntryIndex.put(file, md5Param, md5CheckUrl.getChecksumAlgorithm().getName());
+                if (LogSwitch.LOGGING) {
+                    Log.d(TAG, "md5 checksum ok cost:" + (SystemClock.uptimeMillis() - startUps) + "ms");
+                }
+                return file;
+            } else {
+                if (LogSwitch.LOGGING) {
+                    Log.i(TAG, "md5 checksum cost:" + (SystemClock.uptimeMillis() - startUps) + "ms");
+                }
+                stats.verificationFailures.incrementAndGet();
+                return null;
             }
         }
 
         return file;
     }
 
+    @Override
+    public void put(Key key, final Writer writer) {
+        //原图写入后Glide马上会从缓存读，不能拒绝
+        if (frequencyPolicy != null && !frequencyPolicy.admit(key, this, !isDataCacheKey(key))) {
+            return;
+        }
+        final String safeKey = safeKeyGenerator.getSafeKey(key);
+        //Glide只有在读不到缓存时才会重新写入，pack里的副本在这条解码路径上读不了，改存成普通文件
+        final boolean packable = packFileStore != null && !packFileStore.contains(safeKey);
+        if (packFileStore != null && !packable) {
+            if (LogSwitch.LOGGING) {
+                Log.i(TAG, "packed entry was fetched again, store it as a file:" + safeKey);
+            }
+            packFileStore.remove(safeKey);
+        }
+        if (packable) {
+            checkPackLoaderRegistered();
+        }
+        final MD5CheckUrl md5CheckUrl = getMD5CheckUrl(key);
+        super.put(key, new Writer() {
+            @Override
+            public boolean write(@NonNull File file) {
+                MD5CheckStreamEncoder.clearVerified();
+                boolean success = writer.write(file);
+                String md5 = MD5CheckStreamEncoder.takeVerified();
+                boolean verified = md5CheckUrl == null || md5CheckUrl.getMd5Value().equals(md5);
+                if (!success) {
+                    stats.failedPuts.incrementAndGet();
+                    return false;
+                }
+                stats.puts.incrementAndGet();
+                stats.writtenBytes.addAndGet(file.length());
+                if (verified && packable && file.length() <= packThreshold
+                        && packFileStore.append(safeKey, file)) {
+                    //已经存进pack文件，放弃这次DiskLruCache的写入
+                    stats.packedPuts.incrementAndGet();
+                    return false;
+                }
+                if (md5CheckUrl != null) {
+                    String algorithm = md5CheckUrl.getChecksumAlgorithm().getName();
+                    if (verified) {
+                        verifiedEntryIndex.put(file, md5, algorithm);
+                    } else {
+                        //没有经过MD5CheckStreamEncoder校验，先记下md5，留给MD5CacheScrubber校验
+                        verifiedEntryIndex.putUnverified(file, md5CheckUrl.getMd5Value(), algorithm);
+                    }
+                }
+                return success;
+            }
+        });
+    }
+
+    private static void checkPackLoaderRegistered() {
+        if (!MappedByteBufferFileLoader.isRegistered()) {
+            throw new IllegalStateException("Packed cache entries can only be read through MappedByteBufferFileLoader, "
+                    + "register it with registry.prepend(File.class, ByteBuffer.class, "
+                    + "new MappedByteBufferFileLoader.Factory()) or set packThreshold to 0");
+        }
+    }
+
+    /**
+     * Returns true for the keys of original data, false for those of transformed resources.
+     */
+    static boolean isDataCacheKey(Key key) {
+        GlideInternals.check();
+        return GlideInternals.DATA_CACHE_KEY_CLASS.isInstance(key);
+    }
+
+    @Nullable
+    private MD5CheckUrl getMD5CheckUrl(Key key) {
+        //排除ResourceCacheKey
+        if (!isDataCacheKey(key)) {
+            return null;
+        }
+        Key sourceKey = null;
+        try {
+            sourceKey = (Key) GlideInternals.GET_SOURCE_KEY.invoke(key);
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+        return sourceKey instanceof MD5CheckUrl ? (MD5CheckUrl) sourceKey : null;
+    }
+
+    /**
+     * Returns true if the original data of {@code url}, loaded without a signature, is in the
+     * cache and is known to match its md5 value. Only the verified index is consulted, nothing is
+     * hashed, so an entry that was never verified returns false.
+     */
+    public boolean isVerified(@NonNull MD5CheckUrl url) {
+        Key key;
+        try {
+            key = (Key) GlideInternals.DATA_CACHE_KEY_CONSTRUCTOR.newInstance(url, EmptySignature.obtain());
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+        String safeKey = safeKeyGenerator.getSafeKey(key);
+        if (packFileStore != null && packFileStore.contains(safeKey)) {
+            return true;
+        }
+        File file = new File(directory, safeKey + ENTRY_FILE_SUFFIX);
+        return file.exists() && verifiedEntryIndex.isVerified(file, url.getMd5Value());
+    }
+
+    /**
+     * Returns the size of a file returned by {@link #get(Key)}. Entries stored in pack files are
+     * represented by a handle that doesn't exist, their size is looked up in the pack file.
+     */
+    public static long getEntrySize(@NonNull File file) {
+        PackFileStore packFileStore = PackFileStore.forHandle(file);
+        return packFileStore != null ? packFileStore.length(file) : file.length();
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    VerifiedEntryIndex getVerifiedEntryIndex() {
+        return verifiedEntryIndex;
+    }
+
+    /**
+     * Removes the entry stored in {@code file} from the cache.
+     */
+    void evict(@NonNull File file) throws IOException {
+        String name = file.getName();
+        String safeKey = name.endsWith(ENTRY_FILE_SUFFIX)
+                ? name.substring(0, name.length() - ENTRY_FILE_SUFFIX.length()) : name;
+        verifiedEntryIndex.remove(file);
+        getDiskLruCache().remove(safeKey);
+    }
+
+    private DiskLruCache getDiskLruCache() throws IOException {
+        return getDiskLruCache(this);
+    }
+
+    /**
+     * Returns the DiskLruCache behind {@code wrapper}, opening its journal if needed.
+     */
+    static DiskLruCache getDiskLruCache(DiskLruCacheWrapper wrapper) throws IOException {
+        GlideInternals.check();
+        try {
+            //只有getDiskCache()能拿到DiskLruCache，第一次调用会打开journal
+            return (DiskLruCache) GlideInternals.GET_DISK_CACHE.invoke(wrapper);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void delete(Key key) {
+        if (packFileStore != null) {
+            packFileStore.remove(safeKeyGenerator.getSafeKey(key));
+        }
+        super.delete(key);
+    }
+
+    /**
+     * Returns a snapshot of the hit, verification and latency counters of this cache, and of its
+     * size. Opens the journal if it isn't open yet.
+     */
+    @NonNull
+    public CacheStats getStats() {
+        long size;
+        try {
+            size = getDiskLruCache().size() + getPackedSize();
+        } catch (IOException e) {
+            size = 0;
+        }
+        return new CacheStats(stats, size, maxSize);
+    }
+
+    /**
+     * Returns the bytes used by pack files.
+     */
+    long getPackedSize() {
+        return packFileStore == null ? 0 : packFileStore.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (packFileStore != null) {
+            packFileStore.clear();
+        }
+        super.clear();
+        verifiedEntryIndex.clear();
+        MappedFileHandoff.clear();
+    }
+
     /**
      * Create a new DiskCache in the given directory with a specified max size.
      *
@@ -92,4 +407,48 @@ public class MD5DiskCacheWrapper extends DiskLruCacheWrapper {
     public static DiskCache create(File directory, long maxSize) {
         return new MD5DiskCacheWrapper(directory, maxSize);
     }
+
+    /**
+     * Glide internals the wrapper needs, looked up once per process rather than per instance.
+     */
+    private static final class GlideInternals {
+        static final Class<?> DATA_CACHE_KEY_CLASS;
+        static final Method GET_SOURCE_KEY;
+        static final Constructor<?> DATA_CACHE_KEY_CONSTRUCTOR;
+        static final Method GET_DISK_CACHE;
+        private static final Exception ERROR;
+
+        static {
+            Class<?> dataCacheKeyClass = null;
+            Method getSourceKey = null;
+            Constructor<?> dataCacheKeyConstructor = null;
+            Method getDiskCache = null;
+            Exception error = null;
+            try {
+                //DataCacheKey不能访问，只能反射了
+                dataCacheKeyClass = Class.forName("com.bumptech.glide.load.engine.DataCacheKey");
+                getSourceKey = dataCacheKeyClass.getDeclaredMethod("getSourceKey");
+                getSourceKey.setAccessible(true);
+                dataCacheKeyConstructor = dataCacheKeyClass.getDeclaredConstructor(Key.class, Key.class);
+                dataCacheKeyConstructor.setAccessible(true);
+                getDiskCache = DiskLruCacheWrapper.class.getDeclaredMethod("getDiskCache");
+                getDiskCache.setAccessible(true);
+            } catch (ClassNotFoundException e) {
+                error = e;
+            } catch (NoSuchMethodException e) {
+                error = e;
+            }
+            DATA_CACHE_KEY_CLASS = dataCacheKeyClass;
+            GET_SOURCE_KEY = getSourceKey;
+            DATA_CACHE_KEY_CONSTRUCTOR = dataCacheKeyConstructor;
+            GET_DISK_CACHE = getDiskCache;
+            ERROR = error;
+        }
+
+        static void check() {
+            if (ERROR != null) {
+                throw new IllegalStateException(ERROR);
+            }
+        }
+    }
 }
@@ -1,15 +1,51 @@
 package com.msisuzney.glidehelper.diskcache;
 
 import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.util.Preconditions;
+import com.msisuzney.glidehelper.LogSwitch;
 
 import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * Builds a {@link MD5DiskCacheWrapper}.
+ *
+ * <p>Glide builds the disk cache on the first load that needs it, and opening the DiskLruCache
+ * journal then delays that load. {@link #build()} itself doesn't touch the journal, it is opened on
+ * a background thread, and loads wait for it only if they get to the disk cache first. Call
+ * {@link #warmUp()} right after {@link com.bumptech.glide.GlideBuilder#setDiskCache} to start
+ * everything, including creating the directory, before the first load. Memory cache hits never
+ * wait for the disk cache.
+ *
+ * <p>Given a resource budget, it builds a {@link SegmentedDiskCache} instead, which keeps
+ * transformed resources apart from the original data.
+ */
 
 public class MD5DiskLruCacheFactory implements DiskCache.Factory {
+    private static final String TAG = "MD5DiskLruCacheFactory";
+    static final String RESOURCE_DIRECTORY = "resource";
+
     private final long diskCacheSize;
+    private final long resourceCacheSize;
     private final CacheDirectoryGetter cacheDirectoryGetter;
+    private final DiskCacheOptions options;
+    private volatile MD5DiskCacheWrapper diskCache;
+    @Nullable
+    private volatile SegmentedDiskCache segmentedDiskCache;
+    // Guarded by this.
+    @Nullable
+    private FutureTask<DiskCache> buildTask;
 
     /** Interface called out of UI thread to get the cache folder. */
     public interface CacheDirectoryGetter {
@@ -53,12 +89,102 @@ public class MD5DiskLruCacheFactory implements DiskCache.Factory {
     // Public API.
     @SuppressWarnings("WeakerAccess")
     public MD5DiskLruCacheFactory(CacheDirectoryGetter cacheDirectoryGetter, long diskCacheSize) {
-        this.diskCacheSize = diskCacheSize;
+        this(cacheDirectoryGetter, diskCacheSize, 0, DiskCacheOptions.DEFAULT);
+    }
+
+    /**
+     * @param dataCacheSize     Desired max bytes size for original data.
+     * @param resourceCacheSize Desired max bytes size for transformed resources, kept in the
+     *                          "resource" subdirectory of the cache folder. If 0, or if that
+     *                          directory can't be created, both share {@code dataCacheSize}.
+     * @param options           How entries are stored and verified, see {@link DiskCacheOptions}.
+     *                          Transformed resources are never memory mapped.
+     */
+    public MD5DiskLruCacheFactory(CacheDirectoryGetter cacheDirectoryGetter, long dataCacheSize,
+                                  long resourceCacheSize, @NonNull DiskCacheOptions options) {
+        if (resourceCacheSize < 0) {
+            throw new IllegalArgumentException("resourceCacheSize must not be negative");
+        }
+        this.diskCacheSize = dataCacheSize;
+        this.resourceCacheSize = resourceCacheSize;
         this.cacheDirectoryGetter = cacheDirectoryGetter;
+        this.options = Preconditions.checkNotNull(options);
+    }
+
+    /**
+     * Starts building the disk cache and opening its journal on a background thread, the next
+     * {@link #build()} returns that disk cache. Does nothing if already started or built.
+     */
+    public void warmUp() {
+        FutureTask<DiskCache> task;
+        synchronized (this) {
+            if (buildTask != null) {
+                return;
+            }
+            task = newBuildTask(true);
+            buildTask = task;
+        }
+        WarmUp.EXECUTOR.execute(task);
     }
 
+    /**
+     * Returns the same disk cache on every call, so a later {@link #warmUp()} or a second Glide
+     * instance never opens a second cache over the same directory.
+     */
     @Override
     public DiskCache build() {
+        FutureTask<DiskCache> task;
+        boolean started;
+        synchronized (this) {
+            started = buildTask != null;
+            if (!started) {
+                buildTask = newBuildTask(false);
+            }
+            task = buildTask;
+        }
+        if (!started) {
+            task.run();
+        }
+        return await(task);
+    }
+
+    /**
+     * @param openJournal Whether to open the journal right away, otherwise it is opened on the
+     *                    warm up thread.
+     */
+    private FutureTask<DiskCache> newBuildTask(final boolean openJournal) {
+        return new FutureTask<>(new Callable<DiskCache>() {
+            @Override
+            public DiskCache call() {
+                final DiskCache diskCache = newDiskCache();
+                if (diskCache == null) {
+                    return null;
+                }
+                if (openJournal) {
+                    warmUp(diskCache);
+                } else {
+                    WarmUp.EXECUTOR.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            warmUp(diskCache);
+                        }
+                    });
+                }
+                return diskCache;
+            }
+        });
+    }
+
+    private static void warmUp(DiskCache diskCache) {
+        if (diskCache instanceof SegmentedDiskCache) {
+            ((SegmentedDiskCache) diskCache).warmUp();
+        } else {
+            ((MD5DiskCacheWrapper) diskCache).warmUp();
+        }
+    }
+
+    @Nullable
+    private DiskCache newDiskCache() {
         File cacheDir = cacheDirectoryGetter.getCacheDirectory();
 
         if (cacheDir == null) {
@@ -69,6 +195,79 @@ public class MD5DiskLruCacheFactory implements DiskCache.Factory {
             return null;
         }
 
-        return MD5DiskCacheWrapper.create(cacheDir, diskCacheSize);
+        MD5DiskCacheWrapper diskCache = new MD5DiskCacheWrapper(cacheDir, diskCacheSize, options);
+        if (resourceCacheSize == 0) {
+            this.diskCache = diskCache;
+            return diskCache;
+        }
+
+        //资源缓存放在数据缓存目录下，清空数据缓存时会一起删掉
+        File resourceDir = new File(cacheDir, RESOURCE_DIRECTORY);
+        if (!resourceDir.mkdirs() && (!resourceDir.exists() || !resourceDir.isDirectory())) {
+            //建不了资源目录也不能丢掉数据缓存，退回到不分段
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to create " + resourceDir + ", resources share the data cache");
+            }
+            this.diskCache = diskCache;
+            return diskCache;
+        }
+        SegmentedDiskCache segmentedDiskCache = new SegmentedDiskCache(diskCache,
+                new MD5DiskCacheWrapper(resourceDir, resourceCacheSize, options.withoutMemoryMapping()));
+        this.diskCache = diskCache;
+        this.segmentedDiskCache = segmentedDiskCache;
+        return segmentedDiskCache;
+    }
+
+    private static DiskCache await(FutureTask<DiskCache> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    //Glide只会build一次，不能因为中断就没有磁盘缓存
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the disk cache built for Glide, or null if Glide hasn't built it yet. Glide builds
+     * it lazily, on first disk cache access. With a resource budget this is the segment that holds
+     * original data.
+     */
+    @Nullable
+    public MD5DiskCacheWrapper getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Returns the disk cache built for Glide if it was given a resource budget, or null.
+     */
+    @Nullable
+    public SegmentedDiskCache getSegmentedDiskCache() {
+        return segmentedDiskCache;
+    }
+
+    private static final class WarmUp {
+        static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "md5-disk-cache-warmup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 }
@@ -0,0 +1,136 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+import com.bumptech.glide.util.ByteBufferUtil;
+import com.msisuzney.glidehelper.LogSwitch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads a {@link File} into a {@link ByteBuffer} like Glide's
+ * {@link com.bumptech.glide.load.model.ByteBufferFileLoader}, but reuses the buffer a memory
+ * mapped {@link MD5DiskCacheWrapper} has just verified instead of mapping the file again. It also
+ * reads the entries a {@link MD5DiskCacheWrapper} stores in pack files.
+ *
+ * <p>Register it ahead of the default loader:
+ * <pre>
+ * registry.prepend(File.class, ByteBuffer.class, new MappedByteBufferFileLoader.Factory());
+ * </pre>
+ */
+public class MappedByteBufferFileLoader implements ModelLoader<File, ByteBuffer> {
+    private static final String TAG = "MappedBufferLoader";
+    private static volatile boolean registered;
+
+    @Override
+    public LoadData<ByteBuffer> buildLoadData(@NonNull File file, int width, int height, @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(file), new MappedByteBufferFetcher(file));
+    }
+
+    @Override
+    public boolean handles(@NonNull File file) {
+        return true;
+    }
+
+    /**
+     * Returns true once a {@link Factory} has been created, i.e. the loader was registered.
+     */
+    static boolean isRegistered() {
+        return registered;
+    }
+
+    @VisibleForTesting
+    static void setRegistered(boolean registered) {
+        MappedByteBufferFileLoader.registered = registered;
+    }
+
+    public static class Factory implements ModelLoaderFactory<File, ByteBuffer> {
+
+        public Factory() {
+            registered = true;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<File, ByteBuffer> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new MappedByteBufferFileLoader();
+        }
+
+        @Override
+        public void teardown() {
+            // Do nothing.
+        }
+    }
+
+    private static final class MappedByteBufferFetcher implements DataFetcher<ByteBuffer> {
+        private final File file;
+
+        MappedByteBufferFetcher(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super ByteBuffer> callback) {
+            PackFileStore packFileStore = PackFileStore.forHandle(file);
+            if (packFileStore != null) {
+                ByteBuffer packed = packFileStore.read(file);
+                if (packed != null) {
+                    callback.onDataReady(packed);
+                } else {
+                    callback.onLoadFailed(new IOException("Packed entry is gone or corrupt: " + file));
+                }
+                return;
+            }
+            ByteBuffer result = MappedFileHandoff.take(file);
+            if (result != null) {
+                callback.onDataReady(result);
+                return;
+            }
+            try {
+                result = ByteBufferUtil.fromFile(file);
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.d(TAG, "Failed to obtain ByteBuffer for file", e);
+                }
+                callback.onLoadFailed(e);
+                return;
+            }
+            callback.onDataReady(result);
+        }
+
+        @Override
+        public void cleanup() {
+            // Do nothing.
+        }
+
+        @Override
+        public void cancel() {
+            // Do nothing.
+        }
+
+        @NonNull
+        @Override
+        public Class<ByteBuffer> getDataClass() {
+            return ByteBuffer.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands the buffer a cache file was mapped into for verification by {@link MD5DiskCacheWrapper}
+ * to {@link MappedByteBufferFileLoader}, which loads the same file right after, so the file is
+ * mapped and read only once.
+ *
+ * <p>Only a few buffers are kept, one that is never taken, e.g. because the data was decoded from
+ * an {@link java.io.InputStream}, is dropped when newer ones arrive and unmapped once collected.
+ */
+final class MappedFileHandoff {
+    private static final int MAX_SIZE = 8;
+
+    private static final Map<File, Mapped> BUFFERS = new LinkedHashMap<File, Mapped>(MAX_SIZE, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Mapped> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private MappedFileHandoff() {
+        // Utility class.
+    }
+
+    static void offer(File file, ByteBuffer buffer) {
+        Mapped mapped = new Mapped(buffer, file.length(), file.lastModified());
+        synchronized (BUFFERS) {
+            BUFFERS.put(file, mapped);
+        }
+    }
+
+    /**
+     * Returns the buffer mapped for {@code file}, or null if there is none or the file has changed
+     * since it was mapped.
+     */
+    @Nullable
+    static ByteBuffer take(File file) {
+        Mapped mapped;
+        synchronized (BUFFERS) {
+            mapped = BUFFERS.remove(file);
+        }
+        if (mapped == null || mapped.length != file.length() || mapped.lastModified != file.lastModified()) {
+            return null;
+        }
+        return mapped.buffer;
+    }
+
+    static void clear() {
+        synchronized (BUFFERS) {
+            BUFFERS.clear();
+        }
+    }
+
+    private static final class Mapped {
+        final ByteBuffer buffer;
+        final long length;
+        final long lastModified;
+
+        Mapped(ByteBuffer buffer, long length, long lastModified) {
+            this.buffer = buffer;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,656 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stores small cache entries back to back in a few large segment files instead of one file each,
+ * which saves an inode, a journal line and an open()/close() per entry.
+ *
+ * <p>Each record is the safe key, the length and the XXH64 digest of the data, then the data, a
+ * length of -1 marks a deleted key:
+ * <pre>
+ *     [int keyLength][key][int dataLength][8 byte digest][data]
+ * </pre>
+ * Records are appended to the newest segment until it reaches an eighth of {@code maxSize}, at
+ * most {@link #MAX_SEGMENT_SIZE}, so dropping a segment only evicts a slice of the store. The offset
+ * index is kept in memory and rebuilt by scanning the segments on first use. Reads map the segment
+ * and hand out a slice of it, checked against its digest.
+ *
+ * <p>Once the segments exceed {@code maxSize}, the oldest segment is dropped as a whole. Segments
+ * that are mostly deleted or overwritten records are compacted on a background thread, their live
+ * records are copied to the newest segment and the file is deleted. Deletion records count as live
+ * and are copied as well while an older segment may still hold a record of their key, otherwise
+ * the next scan would bring the deleted entry back.
+ *
+ * <p>An entry is represented by a handle file that doesn't exist, see {@link #getHandle(String)},
+ * which {@link MappedByteBufferFileLoader} resolves with {@link #read(File)}. An entry that can't
+ * be read is dropped, so the next fetch of it is cached again.
+ */
+final class PackFileStore {
+    private static final String TAG = "PackFileStore";
+    static final String DIRECTORY = "packs";
+    private static final String SEGMENT_PREFIX = "pack-";
+    private static final String HANDLE_SUFFIX = ".packed";
+    private static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final long MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int SEGMENTS_PER_STORE = 8;
+    /**
+     * Segments with less live data than this fraction are compacted.
+     */
+    private static final float MIN_LIVE_RATIO = 0.5f;
+    private static final int TOMBSTONE = -1;
+    private static final int DIGEST_LENGTH = 8;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final ChecksumAlgorithm DIGEST = ChecksumAlgorithm.XXH64;
+
+    /**
+     * Live stores by directory, so a handle can be resolved without a reference to its cache.
+     */
+    private static final Map<File, PackFileStore> STORES = new HashMap<>();
+
+    private final File directory;
+    private final long maxSize;
+    private final long segmentSize;
+    private final CacheStats.Recorder stats;
+
+    // Guarded by this.
+    private final Map<String, Location> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    @Nullable
+    private FileOutputStream activeOut;
+    private boolean loaded;
+    private boolean maintenanceScheduled;
+
+    PackFileStore(@NonNull File cacheDirectory, long maxSize, @NonNull CacheStats.Recorder stats) {
+        this.directory = new File(cacheDirectory, DIRECTORY);
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.segmentSize = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxSize / SEGMENTS_PER_STORE));
+        synchronized (STORES) {
+            STORES.put(directory, this);
+        }
+    }
+
+    /**
+     * Returns the store {@code handle} belongs to, or null if it isn't a pack handle.
+     */
+    @Nullable
+    static PackFileStore forHandle(@NonNull File handle) {
+        if (!handle.getName().endsWith(HANDLE_SUFFIX)) {
+            return null;
+        }
+        synchronized (STORES) {
+            return STORES.get(handle.getParentFile());
+        }
+    }
+
+    /**
+     * Returns the handle of the entry for {@code safeKey}, or null if it isn't packed.
+     */
+    @Nullable
+    synchronized File getHandle(@NonNull String safeKey) {
+        ensureLoaded();
+        return index.containsKey(safeKey) ? new File(directory, safeKey + HANDLE_SUFFIX) : null;
+    }
+
+    /**
+     * Returns the length of the data of the entry {@code handle} stands for, or 0 if it is gone.
+     */
+    synchronized long length(@NonNull File handle) {
+        ensureLoaded();
+        String name = handle.getName();
+        Location location = index.get(name.substring(0, name.length() - HANDLE_SUFFIX.length()));
+        return location == null ? 0 : location.length;
+    }
+
+    synchronized boolean contains(@NonNull String safeKey) {
+        ensureLoaded();
+        return index.containsKey(safeKey);
+    }
+
+    /**
+     * Appends the content of {@code file} as the entry for {@code safeKey}.
+     *
+     * @return false if it couldn't be stored, the caller should keep the file then.
+     */
+    boolean append(@NonNull String safeKey, @NonNull File file) {
+        byte[] data;
+        try {
+            data = readFully(file);
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to read " + file, e);
+            }
+            return false;
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        ChecksumAlgorithm.Hasher hasher = DIGEST.newHasher();
+        hasher.update(data, 0, data.length);
+        hasher.digestInto(digest);
+        synchronized (this) {
+            ensureLoaded();
+            try {
+                write(safeKey, data, 0, data.length, digest);
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "Failed to append " + safeKey, e);
+                }
+                closeActive();
+                return false;
+            }
+            scheduleMaintenanceIfNeeded();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the data of the entry {@code handle} stands for, or null if it is gone or corrupt.
+     */
+    @Nullable
+    ByteBuffer read(@NonNull File handle) {
+        String name = handle.getName();
+        String safeKey = name.substring(0, name.length() - HANDLE_SUFFIX.length());
+        long start = System.nanoTime();
+        Location location;
+        ByteBuffer segmentBuffer;
+        synchronized (this) {
+            ensureLoaded();
+            location = index.get(safeKey);
+            if (location == null) {
+                return null;
+            }
+            try {
+                segmentBuffer = map(location);
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "Failed to map segment " + location.segment, e);
+                }
+                stats.readErrors.incrementAndGet();
+                // Forget it, so Glide's next fetch writes the entry again instead of failing here.
+                remove(safeKey);
+                return null;
+            }
+        }
+        ByteBuffer data = segmentBuffer.duplicate();
+        data.limit((int) (location.offset + location.length));
+        data.position((int) location.offset);
+        data = data.slice();
+        boolean matches = DIGEST.verify(data, location.digest);
+        stats.readLatency.record(System.nanoTime() - start);
+        if (!matches) {
+            if (LogSwitch.LOGGING) {
+                Log.i(TAG, "digest mismatch, drop " + safeKey);
+            }
+            stats.verificationFailures.incrementAndGet();
+            synchronized (this) {
+                // Unless it was written again in the meantime.
+                if (index.get(safeKey) == location) {
+                    remove(safeKey);
+                }
+            }
+            return null;
+        }
+        return data;
+    }
+
+    synchronized void remove(@NonNull String safeKey) {
+        ensureLoaded();
+        if (!index.containsKey(safeKey)) {
+            return;
+        }
+        try {
+            write(safeKey, null, 0, TOMBSTONE, null);
+            scheduleMaintenanceIfNeeded();
+        } catch (IOException e) {
+            // The record is dropped from the index, it comes back after a restart at worst.
+            closeActive();
+            Location old = index.remove(safeKey);
+            Segment segment = segments.get(old.segment);
+            if (segment != null) {
+                segment.liveBytes -= old.length;
+            }
+        }
+    }
+
+    /**
+     * Builds the offset index now instead of on first use.
+     */
+    synchronized void load() {
+        ensureLoaded();
+    }
+
+    synchronized void clear() {
+        closeActive();
+        for (Segment segment : segments.values()) {
+            delete(segment.file);
+        }
+        segments.clear();
+        index.clear();
+        loaded = true;
+    }
+
+    /**
+     * Returns the bytes used by the segment files.
+     */
+    synchronized long size() {
+        ensureLoaded();
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.length;
+        }
+        return size;
+    }
+
+    private void write(String safeKey, @Nullable byte[] data, int offset, int length,
+                       @Nullable byte[] digest) throws IOException {
+        byte[] key = safeKey.getBytes(US_ASCII);
+        int recordLength = 4 + key.length + 4 + (length == TOMBSTONE ? 0 : DIGEST_LENGTH + length);
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (segment == null || segment.sealed
+                || (segment.length > 0 && segment.length + recordLength > segmentSize)) {
+            closeActive();
+            int id = segment == null ? 0 : segment.id + 1;
+            segment = new Segment(id, new File(directory, SEGMENT_PREFIX + id));
+            segments.put(id, segment);
+        }
+        if (activeOut == null) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create " + directory);
+            }
+            activeOut = new FileOutputStream(segment.file, true);
+        }
+        // One write per record, a failed one is cut off again so the segment stays aligned with
+        // its length.
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(key.length).put(key).putInt(length);
+        if (length != TOMBSTONE) {
+            record.put(digest).put(data, offset, length);
+        }
+        try {
+            activeOut.write(record.array());
+        } catch (IOException e) {
+            try {
+                activeOut.getChannel().truncate(segment.length);
+            } catch (IOException ignored) {
+                // The partial record stays, nothing more goes after it.
+                segment.sealed = true;
+            }
+            throw e;
+        }
+
+        long dataOffset = segment.length + 4 + key.length + 4 + DIGEST_LENGTH;
+        segment.length += recordLength;
+        Location old;
+        if (length == TOMBSTONE) {
+            old = index.remove(safeKey);
+            segment.addTombstone(safeKey, recordLength);
+        } else {
+            old = index.put(safeKey, new Location(segment.id, dataOffset, length, digest));
+            segment.liveBytes += length;
+            forgetTombstones(safeKey);
+        }
+        if (old != null) {
+            Segment oldSegment = segments.get(old.segment);
+            if (oldSegment != null) {
+                oldSegment.liveBytes -= old.length;
+            }
+        }
+    }
+
+    /**
+     * Drops the deletion records of {@code safeKey} from the accounting once a newer record of the
+     * key exists, they no longer need to survive compaction.
+     */
+    private void forgetTombstones(String safeKey) {
+        for (Segment segment : segments.values()) {
+            segment.removeTombstone(safeKey);
+        }
+    }
+
+    private ByteBuffer map(Location location) throws IOException {
+        Segment segment = segments.get(location.segment);
+        if (segment.mapped == null || segment.mapped.capacity() < location.offset + location.length) {
+            RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                segment.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        }
+        return segment.mapped;
+    }
+
+    private void scheduleMaintenanceIfNeeded() {
+        if (maintenanceScheduled || !needsMaintenance()) {
+            return;
+        }
+        maintenanceScheduled = true;
+        Maintenance.EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        });
+    }
+
+    private boolean needsMaintenance() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.length;
+        }
+        return size > maxSize || findSparseSegment() != null;
+    }
+
+    @Nullable
+    private Segment findSparseSegment() {
+        Segment active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.liveBytes < segment.length * MIN_LIVE_RATIO) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the oldest segments until the rest fit in {@code maxSize}, then compacts sparse ones.
+     */
+    private synchronized void maintain() {
+        maintenanceScheduled = false;
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.length;
+        }
+        while (size > maxSize && segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            size -= oldest.length;
+            dropSegment(oldest);
+        }
+        Segment sparse;
+        while ((sparse = findSparseSegment()) != null) {
+            try {
+                compact(sparse);
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "Failed to compact " + sparse.file, e);
+                }
+                closeActive();
+                return;
+            }
+        }
+    }
+
+    private void dropSegment(Segment segment) {
+        for (Iterator<Location> it = index.values().iterator(); it.hasNext(); ) {
+            if (it.next().segment == segment.id) {
+                it.remove();
+            }
+        }
+        segments.remove(segment.id);
+        delete(segment.file);
+        if (LogSwitch.LOGGING) {
+            Log.d(TAG, "dropped " + segment.file);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        List<Map.Entry<String, Location>> live = new ArrayList<>();
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            if (entry.getValue().segment == segment.id) {
+                live.add(entry);
+            }
+        }
+        if (!live.isEmpty()) {
+            ByteBuffer buffer = map(live.get(0).getValue()).duplicate();
+            byte[] data = new byte[0];
+            for (Map.Entry<String, Location> entry : live) {
+                Location location = entry.getValue();
+                if (data.length < location.length) {
+                    data = new byte[location.length];
+                }
+                buffer.position((int) location.offset);
+                buffer.get(data, 0, location.length);
+                write(entry.getKey(), data, 0, location.length, location.digest);
+            }
+        }
+        // Without an older segment there's no record left for a deletion record to hide.
+        boolean hasOlderSegment = segments.firstKey() < segment.id;
+        int tombstones = 0;
+        if (hasOlderSegment) {
+            for (String safeKey : new ArrayList<>(segment.tombstones.keySet())) {
+                write(safeKey, null, 0, TOMBSTONE, null);
+                tombstones++;
+            }
+        }
+        segments.remove(segment.id);
+        delete(segment.file);
+        if (LogSwitch.LOGGING) {
+            Log.d(TAG, "compacted " + segment.file + ", moved " + live.size() + " entries and "
+                    + tombstones + " deletions");
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(SEGMENT_PREFIX)) {
+                continue;
+            }
+            try {
+                int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length()));
+                segments.put(id, new Segment(id, file));
+            } catch (NumberFormatException e) {
+                // Not ours.
+            }
+        }
+        for (Segment segment : segments.values()) {
+            try {
+                scan(segment);
+            } catch (IOException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "Failed to read " + segment.file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the records of {@code segment} to the index, later records win. A record cut short by
+     * a crash is truncated.
+     */
+    private void scan(Segment segment) throws IOException {
+        long fileLength = segment.file.length();
+        long offset = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+        try {
+            while (offset < fileLength) {
+                int keyLength = in.readInt();
+                if (keyLength <= 0 || keyLength > 256) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                int length = in.readInt();
+                String safeKey = new String(key, US_ASCII);
+                long recordLength = 4 + keyLength + 4;
+                Location old;
+                if (length == TOMBSTONE) {
+                    old = index.remove(safeKey);
+                    segment.addTombstone(safeKey, (int) recordLength);
+                } else {
+                    if (length < 0 || offset + recordLength + DIGEST_LENGTH + length > fileLength) {
+                        break;
+                    }
+                    byte[] digest = new byte[DIGEST_LENGTH];
+                    in.readFully(digest);
+                    skipFully(in, length);
+                    recordLength += DIGEST_LENGTH + length;
+                    old = index.put(safeKey, new Location(segment.id, offset + 4 + keyLength + 4 + DIGEST_LENGTH,
+                            length, digest));
+                    segment.liveBytes += length;
+                    forgetTombstones(safeKey);
+                }
+                if (old != null) {
+                    segments.get(old.segment).liveBytes -= old.length;
+                }
+                offset += recordLength;
+            }
+        } catch (EOFException e) {
+            // Truncated below.
+        } finally {
+            in.close();
+        }
+        segment.length = offset;
+        if (offset < fileLength) {
+            RandomAccessFile raf = new RandomAccessFile(segment.file, "rw");
+            try {
+                raf.setLength(offset);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    private void closeActive() {
+        if (activeOut != null) {
+            try {
+                activeOut.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            activeOut = null;
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Too large: " + file);
+        }
+        byte[] data = new byte[(int) length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete() && LogSwitch.LOGGING) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        long length;
+        /**
+         * The data of the live records plus the deletion records that still matter.
+         */
+        long liveBytes;
+        /**
+         * Record lengths of the deletion records in this segment that are still the latest record
+         * of their key, by key.
+         */
+        final Map<String, Integer> tombstones = new HashMap<>();
+        @Nullable
+        MappedByteBuffer mapped;
+        /**
+         * Set when a failed write couldn't be cut off, later records go to a new segment.
+         */
+        boolean sealed;
+
+        Segment(int id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        void addTombstone(String safeKey, int recordLength) {
+            Integer old = tombstones.put(safeKey, recordLength);
+            liveBytes += recordLength - (old != null ? old : 0);
+        }
+
+        void removeTombstone(String safeKey) {
+            Integer old = tombstones.remove(safeKey);
+            if (old != null) {
+                liveBytes -= old;
+            }
+        }
+    }
+
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int length;
+        final byte[] digest;
+
+        Location(int segment, long offset, int length, byte[] digest) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.digest = digest;
+        }
+    }
+
+    private static final class Maintenance {
+        static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "md5-pack-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,87 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+
+import java.io.File;
+
+/**
+ * A disk cache with separate budgets for original data and transformed resources, so a burst of
+ * thumbnail variants can't evict the verified originals they were made from.
+ *
+ * <p>Original data, i.e. entries with a {@code DataCacheKey}, go to one {@link MD5DiskCacheWrapper},
+ * everything else to another one in a subdirectory of the data directory. Each segment is evicted
+ * within its own budget, least recently used first or frequency aware, see {@link TinyLfuPolicy},
+ * and keeps its own {@link CacheStats}, see {@link #getDataStats()} and {@link #getResourceStats()}.
+ *
+ * <p>Built by {@link MD5DiskLruCacheFactory} when it is given a resource budget.
+ */
+public final class SegmentedDiskCache implements DiskCache {
+    private final MD5DiskCacheWrapper data;
+    private final MD5DiskCacheWrapper resource;
+
+    SegmentedDiskCache(@NonNull MD5DiskCacheWrapper dataCache, @NonNull MD5DiskCacheWrapper resourceCache) {
+        data = dataCache;
+        resource = resourceCache;
+    }
+
+    @NonNull
+    MD5DiskCacheWrapper getDataCache() {
+        return data;
+    }
+
+    /**
+     * Opens the journals of both segments, see {@link MD5DiskCacheWrapper#warmUp()}.
+     */
+    void warmUp() {
+        // The data segment deletes its whole directory, resource segment included, if its journal
+        // is corrupt, so it goes first.
+        data.warmUp();
+        resource.warmUp();
+    }
+
+    @Override
+    public File get(Key key) {
+        return segmentFor(key).get(key);
+    }
+
+    @Override
+    public void put(Key key, Writer writer) {
+        segmentFor(key).put(key, writer);
+    }
+
+    @Override
+    public void delete(Key key) {
+        segmentFor(key).delete(key);
+    }
+
+    @Override
+    public void clear() {
+        // Clearing the data segment deletes the resource directory inside it, close the resource
+        // segment first so it reopens a fresh journal.
+        resource.clear();
+        data.clear();
+    }
+
+    /**
+     * Returns the stats of the segment that holds original data.
+     */
+    @NonNull
+    public CacheStats getDataStats() {
+        return data.getStats();
+    }
+
+    /**
+     * Returns the stats of the segment that holds transformed resources.
+     */
+    @NonNull
+    public CacheStats getResourceStats() {
+        return resource.getStats();
+    }
+
+    private MD5DiskCacheWrapper segmentFor(Key key) {
+        return MD5DiskCacheWrapper.isDataCacheKey(key) ? data : resource;
+    }
+}
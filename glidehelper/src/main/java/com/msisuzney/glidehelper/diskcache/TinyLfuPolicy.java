@@ -0,0 +1,140 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.disklrucache.DiskLruCache;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper;
+import com.bumptech.glide.load.engine.cache.SafeKeyGenerator;
+import com.msisuzney.glidehelper.LogSwitch;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Makes a DiskLruCache frequency aware, so a long scroll of one-off images doesn't push out the
+ * images that are used every day.
+ *
+ * <p>Every read is counted in a {@link FrequencySketch}. When a write is about to make the cache
+ * evict, the least recently used entries that were read more often than the new one are moved to
+ * the recently used end, and DiskLruCache evicts colder entries instead. A write that may be
+ * dropped is not admitted at all if it is less popular than the entry it would evict, this is only
+ * done for transformed resources: Glide reads original data back from the cache right after
+ * writing it, so dropping that write would fail the load.
+ *
+ * <p>Access history is kept in memory only, after a restart entries compete on recency until the
+ * sketch has seen enough reads. Entries are moved without writing to the journal, so the move
+ * doesn't survive a restart either, and a write costs no journal I/O.
+ */
+final class TinyLfuPolicy {
+    private static final String TAG = "TinyLfuPolicy";
+    /**
+     * Used to size the sketch and to tell whether a write is likely to make the cache evict.
+     */
+    private static final long AVERAGE_ENTRY_SIZE = 32 * 1024;
+    /**
+     * The number of least recently used entries considered for each write.
+     */
+    private static final int EVICTION_WINDOW = 16;
+
+    private final FrequencySketch sketch;
+    private final SafeKeyGenerator safeKeyGenerator = new SafeKeyGenerator();
+
+    TinyLfuPolicy(long maxSize) {
+        sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, Math.max(1, maxSize / AVERAGE_ENTRY_SIZE)));
+    }
+
+    void recordAccess(Key key) {
+        sketch.increment(safeKeyGenerator.getSafeKey(key).hashCode());
+    }
+
+    /**
+     * Called before {@code key} is written to {@code wrapper}.
+     *
+     * @param mayReject whether the write may be dropped.
+     * @return false if the write should be dropped.
+     */
+    boolean admit(Key key, DiskLruCacheWrapper wrapper, boolean mayReject) {
+        String safeKey = safeKeyGenerator.getSafeKey(key);
+        DiskLruCache cache;
+        try {
+            cache = MD5DiskCacheWrapper.getDiskLruCache(wrapper);
+        } catch (IOException e) {
+            return true;
+        }
+        if (cache.size() + AVERAGE_ENTRY_SIZE <= cache.getMaxSize()) {
+            return true;
+        }
+        LinkedHashMap<String, ?> lruEntries = getLruEntries(cache);
+        if (lruEntries == null) {
+            return true;
+        }
+
+        int candidate = sketch.frequency(safeKey.hashCode());
+        // DiskLruCache guards its entries with its own lock.
+        synchronized (cache) {
+            List<String> eldest = new ArrayList<>(EVICTION_WINDOW);
+            Iterator<String> it = lruEntries.keySet().iterator();
+            while (it.hasNext() && eldest.size() < EVICTION_WINDOW) {
+                eldest.add(it.next());
+            }
+            if (eldest.isEmpty()) {
+                return true;
+            }
+            if (mayReject && !eldest.get(0).equals(safeKey)
+                    && candidate < sketch.frequency(eldest.get(0).hashCode())) {
+                if (LogSwitch.LOGGING) {
+                    Log.v(TAG, "not admitted, frequency:" + candidate);
+                }
+                return false;
+            }
+            for (String victim : eldest) {
+                if (!victim.equals(safeKey) && sketch.frequency(victim.hashCode()) > candidate) {
+                    // The map is access ordered, a lookup moves the entry to the recently used end
+                    // without the READ line DiskLruCache.get() would append to the journal.
+                    lruEntries.get(victim);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static LinkedHashMap<String, ?> getLruEntries(DiskLruCache cache) {
+        if (LruEntries.FIELD == null) {
+            return null;
+        }
+        try {
+            return (LinkedHashMap<String, ?>) LruEntries.FIELD.get(cache);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * DiskLruCache doesn't expose its eviction order, it has to be read from the access ordered map.
+     */
+    private static final class LruEntries {
+        static final Field FIELD;
+
+        static {
+            Field field = null;
+            try {
+                field = DiskLruCache.class.getDeclaredField("lruEntries");
+                field.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                if (LogSwitch.LOGGING) {
+                    Log.w(TAG, "DiskLruCache.lruEntries not found, frequency aware eviction disabled", e);
+                }
+            }
+            FIELD = field;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import android.util.Log;
+
+import com.msisuzney.glidehelper.LogSwitch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the md5 value of cache files and whether their content is known to match it. An entry
+ * is only trusted while the file keeps the length and last-modified time it had when it was
+ * recorded.
+ *
+ * <p>Entries are kept in memory and appended to a small file next to the DiskLruCache journal,
+ * one line per entry, the last field is when the entry was last verified, or 0 if it never was:
+ * <pre>
+ *     646ea9e1c4f674855856c3e2ec757cd719a6c2ecb286f0107747a88c1da2577e.0 100000 1602931200000 6567998f4284abe3785483c218d30773 md5 1602931260000
+ * </pre>
+ * The file is loaded on first use and rewritten once it holds too many outdated lines, the same
+ * way DiskLruCache compacts its journal.
+ */
+final class VerifiedEntryIndex {
+    private static final String TAG = "VerifiedEntryIndex";
+    static final String INDEX_FILE = "verified";
+    static final String INDEX_FILE_TEMP = "verified.tmp";
+    private static final String DIRTY_FILE_SUFFIX = ".tmp";
+    private static final int REDUNDANT_LINE_COMPACT_THRESHOLD = 2000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private Writer writer;
+    private boolean loaded;
+    private int redundantLineCount;
+
+    VerifiedEntryIndex(File directory) {
+        this.directory = directory;
+        this.indexFile = new File(directory, INDEX_FILE);
+    }
+
+    /**
+     * Records {@code file} as verified. {@code file} may be the dirty file of an edit, DiskLruCache
+     * renames it to the clean file on commit, which keeps its length and last-modified time.
+     */
+    synchronized void put(File file, String md5, String algorithm) {
+        put(file, md5, algorithm, System.currentTimeMillis());
+    }
+
+    /**
+     * Records the md5 value of {@code file} without claiming it matches, so {@link MD5CacheScrubber}
+     * can verify it later.
+     */
+    synchronized void putUnverified(File file, String md5, String algorithm) {
+        put(file, md5, algorithm, 0);
+    }
+
+    private void put(File file, String md5, String algorithm, long verifiedAt) {
+        if (!isSafeField(md5) || !isSafeField(algorithm)) {
+            return;
+        }
+        ensureLoaded();
+        String name = cleanName(file);
+        Entry entry = new Entry(file.length(), file.lastModified(), md5, algorithm, verifiedAt);
+        if (entries.put(name, entry) != null) {
+            redundantLineCount++;
+        }
+        append(name, entry);
+    }
+
+    synchronized boolean isVerified(File file, String md5) {
+        Entry entry = get(file);
+        return entry != null && entry.isVerified() && entry.md5.equals(md5);
+    }
+
+    /**
+     * Returns the entry of {@code file}, or null if there is none or the file has changed since.
+     */
+    synchronized Entry get(File file) {
+        ensureLoaded();
+        String name = file.getName();
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.length != file.length() || entry.lastModified != file.lastModified()) {
+            entries.remove(name);
+            redundantLineCount++;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Marks {@code entry} of {@code file} as verified now, unless it was replaced in the meantime.
+     */
+    synchronized void markVerified(File file, Entry entry) {
+        String name = file.getName();
+        if (entries.get(name) != entry) {
+            return;
+        }
+        Entry verified = new Entry(entry.length, entry.lastModified, entry.md5, entry.algorithm,
+                System.currentTimeMillis());
+        entries.put(name, verified);
+        redundantLineCount++;
+        append(name, verified);
+    }
+
+    /**
+     * Forgets the entry of {@code file}, e.g. because it was evicted.
+     */
+    synchronized void remove(File file) {
+        if (entries.remove(file.getName()) != null) {
+            // Not written down, the line is dropped on load once the file is gone.
+            redundantLineCount++;
+        }
+    }
+
+    /**
+     * Returns the names of the files that have an entry, those that were never verified first, then
+     * those that were verified longest ago.
+     */
+    synchronized List<String> getScrubOrder() {
+        ensureLoaded();
+        final Map<String, Entry> snapshot = new HashMap<>(entries);
+        List<String> names = new ArrayList<>(snapshot.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                long v1 = snapshot.get(o1).verifiedAt;
+                long v2 = snapshot.get(o2).verifiedAt;
+                return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Forgets every entry, e.g. after the cache directory has been deleted.
+     */
+    synchronized void clear() {
+        closeWriter();
+        entries.clear();
+        redundantLineCount = 0;
+        loaded = true;
+        if (indexFile.exists() && !indexFile.delete() && LogSwitch.LOGGING) {
+            Log.w(TAG, "Failed to delete " + indexFile);
+        }
+    }
+
+    /**
+     * Reads the index file now instead of on first use.
+     */
+    synchronized void load() {
+        ensureLoaded();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!indexFile.exists()) {
+            return;
+        }
+        int lineCount = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                readLine(line);
+            }
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to read " + indexFile, e);
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+
+        // Drop entries that DiskLruCache evicted while we weren't looking.
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry> mapEntry = it.next();
+            File file = new File(directory, mapEntry.getKey());
+            Entry entry = mapEntry.getValue();
+            if (entry.length != file.length() || entry.lastModified != file.lastModified()) {
+                it.remove();
+            }
+        }
+        redundantLineCount = lineCount - entries.size();
+    }
+
+    private void readLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length != 6) {
+            // Ignore the corrupt line, the entry will just be hashed again.
+            return;
+        }
+        try {
+            entries.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3],
+                    parts[4], Long.parseLong(parts[5])));
+        } catch (NumberFormatException e) {
+            // Corrupt as well.
+        }
+    }
+
+    private void append(String name, Entry entry) {
+        if (redundantLineCount >= REDUNDANT_LINE_COMPACT_THRESHOLD
+                && redundantLineCount >= entries.size()) {
+            rebuild();
+            return;
+        }
+        try {
+            if (writer != null && !indexFile.exists()) {
+                // The directory was deleted by DiskLruCache, start over with what we know.
+                rebuild();
+                return;
+            }
+            if (writer == null) {
+                writer = newWriter(indexFile, true);
+            }
+            writeEntry(writer, name, entry);
+            writer.flush();
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to append to " + indexFile, e);
+            }
+            closeWriter();
+        }
+    }
+
+    private void rebuild() {
+        closeWriter();
+        File tempFile = new File(directory, INDEX_FILE_TEMP);
+        Writer tempWriter = null;
+        try {
+            tempWriter = newWriter(tempFile, false);
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                writeEntry(tempWriter, mapEntry.getKey(), mapEntry.getValue());
+            }
+            tempWriter.close();
+            tempWriter = null;
+            if (!tempFile.renameTo(indexFile)) {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+            redundantLineCount = 0;
+            writer = newWriter(indexFile, true);
+        } catch (IOException e) {
+            if (LogSwitch.LOGGING) {
+                Log.w(TAG, "Failed to rebuild " + indexFile, e);
+            }
+            closeQuietly(tempWriter);
+            closeWriter();
+        }
+    }
+
+    private Writer newWriter(File file, boolean append) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), UTF_8));
+    }
+
+    private static void writeEntry(Writer writer, String name, Entry entry) throws IOException {
+        writer.write(name + ' ' + entry.length + ' ' + entry.lastModified + ' ' + entry.md5 + ' '
+                + entry.algorithm + ' ' + entry.verifiedAt + '\n');
+    }
+
+    private void closeWriter() {
+        closeQuietly(writer);
+        writer = null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static boolean isSafeField(String value) {
+        return !value.isEmpty() && value.indexOf(' ') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0;
+    }
+
+    private static String cleanName(File file) {
+        String name = file.getName();
+        if (name.endsWith(DIRTY_FILE_SUFFIX)) {
+            return name.substring(0, name.length() - DIRTY_FILE_SUFFIX.length());
+        }
+        return name;
+    }
+
+    static final class Entry {
+        final long length;
+        final long lastModified;
+        final String md5;
+        final String algorithm;
+        final long verifiedAt;
+
+        Entry(long length, long lastModified, String md5, String algorithm, long verifiedAt) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.md5 = md5;
+            this.algorithm = algorithm;
+            this.verifiedAt = verifiedAt;
+        }
+
+        boolean isVerified() {
+            return verifiedAt != 0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A DataFetcher that shares the download of its {@link MD5CheckUrl} with other requests for the
+ * same url through a {@link FetchCoalescer}.
+ *
+ * <p>The leader of a flight loads like {@link HttpMD5CheckUrlFetcher}, the other requests return
+ * immediately and are called back from the thread that ran the download.
+ */
+class CoalescingFetcher implements DataFetcher<InputStream> {
+    private final FetchCoalescer coalescer;
+    private final MD5CheckUrl glideUrl;
+    private final HttpMD5CheckUrlFetcher fetcher;
+
+    private FetchCoalescer.Flight flight;
+    private DataCallback<? super InputStream> callback;
+    private boolean isCancelled;
+    private boolean holdsFile;
+    private InputStream stream;
+
+    CoalescingFetcher(FetchCoalescer coalescer, MD5CheckUrl glideUrl, HttpMD5CheckUrlFetcher fetcher) {
+        this.coalescer = coalescer;
+        this.glideUrl = glideUrl;
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+        FetchCoalescer.Flight flight;
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
+            this.callback = callback;
+            flight = coalescer.join(glideUrl, fetcher, this);
+            this.flight = flight;
+        }
+        if (flight.isLeader(this)) {
+            flight.start(priority);
+        }
+    }
+
+    void onFileReady(FetchCoalescer.Flight flight, File file) {
+        DataCallback<? super InputStream> callback;
+        InputStream data = null;
+        IOException error = null;
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
+            callback = this.callback;
+            try {
+                stream = MD5CheckInputStream.verified(new FileInputStream(file), flight.getUrl());
+                flight.acquire();
+                holdsFile = true;
+                data = stream;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (data != null) {
+            callback.onDataReady(data);
+        } else {
+            callback.onLoadFailed(error);
+        }
+    }
+
+    void onFailed(Exception e) {
+        DataCallback<? super InputStream> callback;
+        synchronized (this) {
+            if (isCancelled) {
+                return;
+            }
+            callback = this.callback;
+        }
+        callback.onLoadFailed(e);
+    }
+
+    @Override
+    public void cleanup() {
+        FetchCoalescer.Flight flight;
+        synchronized (this) {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+                stream = null;
+            }
+            if (!holdsFile) {
+                return;
+            }
+            holdsFile = false;
+            flight = this.flight;
+        }
+        flight.release();
+    }
+
+    @Override
+    public void cancel() {
+        FetchCoalescer.Flight flight;
+        synchronized (this) {
+            isCancelled = true;
+            flight = this.flight;
+        }
+        if (flight != null) {
+            flight.cancel(this);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Class<InputStream> getDataClass() {
+        return InputStream.class;
+    }
+
+    @NonNull
+    @Override
+    public DataSource getDataSource() {
+        return DataSource.REMOTE;
+    }
+}
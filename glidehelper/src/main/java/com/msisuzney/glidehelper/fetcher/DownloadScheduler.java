@@ -0,0 +1,254 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.msisuzney.glidehelper.LogSwitch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides when {@link HttpMD5CheckUrlFetcher}s may open their connections, so the image the user
+ * is looking at isn't stuck behind off-screen prefetches.
+ *
+ * <p>Pending downloads are started in {@link Priority} order, {@link Priority#IMMEDIATE} first.
+ * A download gains one priority level for every {@code agingMillis} it waits, so a steady stream
+ * of urgent requests can't starve {@link Priority#LOW} ones forever, but only requests that are
+ * {@link Priority#IMMEDIATE} themselves are ever ranked as such. Downloads of the same priority
+ * start in the order they were queued.
+ *
+ * <p>At most {@code maxConcurrent} connections are open at once, and at most
+ * {@code maxPerHost} to the same host. Nothing waits on Glide's source threads:
+ * {@link com.bumptech.glide.load.data.DataFetcher#loadData} only queues the download and returns,
+ * and the download runs on one of the scheduler's own threads once it is given a slot, so queued
+ * downloads never hold the threads a later {@link Priority#IMMEDIATE} load needs to get queued.
+ *
+ * <p>One instance should be shared by every loader, e.g. through
+ * {@link HttpMD5CheckUrlLoader.Factory}.
+ */
+public final class DownloadScheduler {
+    private static final String TAG = "DownloadScheduler";
+    /**
+     * The best rank a request that isn't {@link Priority#IMMEDIATE} can age to.
+     */
+    private static final int MIN_AGED_RANK = Priority.HIGH.ordinal();
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final int maxConcurrent;
+    private final int maxPerHost;
+    private final long agingMillis;
+    private final ThreadPoolExecutor executor;
+
+    // Guarded by this.
+    private final List<Ticket> pending = new ArrayList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private int running;
+    private long grantedCount;
+    private long totalWaitMillis;
+    private long maxWaitMillis;
+
+    /**
+     * @param maxConcurrent the max number of open connections.
+     * @param maxPerHost    the max number of open connections to a single host.
+     * @param agingMillis   how long a request waits before it is treated as one priority level
+     *                      higher.
+     */
+    public DownloadScheduler(int maxConcurrent, int maxPerHost, long agingMillis) {
+        if (maxConcurrent <= 0 || maxPerHost <= 0 || agingMillis <= 0) {
+            throw new IllegalArgumentException("maxConcurrent, maxPerHost and agingMillis must be positive");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+        this.agingMillis = agingMillis;
+        // At most maxConcurrent downloads run at once, cancelled ones only report and finish, so
+        // the threads are bounded without a fixed pool that would hold cancellations back.
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new DownloadThreadFactory());
+    }
+
+    /**
+     * Queues a download, its {@link Ticket#download} is run on one of the scheduler's threads once
+     * it may connect, or once it is cancelled. Either way it must hand the ticket back with
+     * {@link #finish(Ticket)}.
+     */
+    synchronized void enqueue(@NonNull Ticket ticket) {
+        ticket.enqueueTime = SystemClock.uptimeMillis();
+        pending.add(ticket);
+        dispatch();
+    }
+
+    /**
+     * Withdraws a download that hasn't started yet and runs it right away, so it can report the
+     * cancellation. A download that is running keeps its slot until {@link #finish(Ticket)}. Safe
+     * to call from any thread.
+     */
+    synchronized void cancel(@NonNull Ticket ticket) {
+        if (ticket.state != Ticket.PENDING) {
+            return;
+        }
+        pending.remove(ticket);
+        ticket.state = Ticket.CANCELLED;
+        executor.execute(ticket.download);
+    }
+
+    /**
+     * Releases the slot of a download.
+     */
+    synchronized void finish(@NonNull Ticket ticket) {
+        if (ticket.state == Ticket.RUNNING) {
+            running--;
+            Integer count = runningPerHost.get(ticket.host);
+            if (count == null || count <= 1) {
+                runningPerHost.remove(ticket.host);
+            } else {
+                runningPerHost.put(ticket.host, count - 1);
+            }
+            dispatch();
+        } else if (ticket.state == Ticket.PENDING) {
+            pending.remove(ticket);
+        }
+        ticket.state = Ticket.FINISHED;
+    }
+
+    /**
+     * Returns the number of downloads waiting for a slot.
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of downloads holding a slot.
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Returns the average time downloads waited for a slot, in milliseconds.
+     */
+    public synchronized long getAverageWaitMillis() {
+        return grantedCount == 0 ? 0 : totalWaitMillis / grantedCount;
+    }
+
+    /**
+     * Returns the longest time a download waited for a slot, in milliseconds.
+     */
+    public synchronized long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Returns the number of downloads that were given a slot.
+     */
+    public synchronized long getStartedCount() {
+        return grantedCount;
+    }
+
+    private void dispatch() {
+        long now = SystemClock.uptimeMillis();
+        while (running < maxConcurrent) {
+            Ticket next = null;
+            int nextRank = Integer.MAX_VALUE;
+            for (Ticket ticket : pending) {
+                Integer count = runningPerHost.get(ticket.host);
+                if (count != null && count >= maxPerHost) {
+                    continue;
+                }
+                int rank = rank(ticket, now);
+                // pending is in queue order, so ties go to the oldest.
+                if (rank < nextRank) {
+                    next = ticket;
+                    nextRank = rank;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            pending.remove(next);
+            next.state = Ticket.RUNNING;
+            running++;
+            Integer count = runningPerHost.get(next.host);
+            runningPerHost.put(next.host, count == null ? 1 : count + 1);
+
+            long waited = now - next.enqueueTime;
+            grantedCount++;
+            totalWaitMillis += waited;
+            maxWaitMillis = Math.max(maxWaitMillis, waited);
+            if (LogSwitch.LOGGING) {
+                Log.v(TAG, "start " + next.priority + " download for " + next.host + " after " + waited
+                        + "ms, queued:" + pending.size() + ",running:" + running);
+            }
+            executor.execute(next.download);
+        }
+    }
+
+    private int rank(Ticket ticket, long now) {
+        int rank = ticket.priority.ordinal();
+        if (rank <= MIN_AGED_RANK) {
+            return rank;
+        }
+        long aged = (now - ticket.enqueueTime) / agingMillis;
+        return (int) Math.max(MIN_AGED_RANK, rank - aged);
+    }
+
+    /**
+     * A download waiting for, or holding, a slot.
+     */
+    static final class Ticket {
+        static final int PENDING = 0;
+        static final int RUNNING = 1;
+        static final int CANCELLED = 2;
+        static final int FINISHED = 3;
+
+        final String host;
+        final Priority priority;
+        final Runnable download;
+        // Guarded by the scheduler.
+        long enqueueTime;
+        int state = PENDING;
+
+        /**
+         * @param download connects and downloads once the ticket is {@link #RUNNING}, or reports
+         *                 the cancellation if it is {@link #CANCELLED}.
+         */
+        Ticket(@Nullable String host, @NonNull Priority priority, @NonNull Runnable download) {
+            this.host = host == null ? "" : host;
+            this.priority = priority;
+            this.download = download;
+        }
+    }
+
+    /**
+     * Runs downloads at the same background priority as Glide's source threads.
+     */
+    private static final class DownloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNum = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "md5-download-" + threadNum.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
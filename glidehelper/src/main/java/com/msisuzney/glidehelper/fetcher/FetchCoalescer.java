@@ -0,0 +1,177 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.util.Synthetic;
+import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets concurrent requests for the same {@link MD5CheckUrl} share one download.
+ *
+ * <p>The first request for a key becomes the leader and starts the download, every
+ * request that arrives while it is running joins the same {@link Flight} and is called back when
+ * it completes. The verified body is kept in a spool file that is deleted once the last request
+ * has released it. The download is only cancelled when every request in the flight has been
+ * cancelled.
+ */
+final class FetchCoalescer {
+    private static final String TAG = "FetchCoalescer";
+
+    private final Map<MD5CheckUrl, Flight> flights = new HashMap<>();
+
+    /**
+     * Adds {@code participant} to the running flight for {@code key}, or starts a new one that is
+     * run by {@code fetcher}.
+     *
+     * @return the flight, {@link Flight#isLeader(CoalescingFetcher)} tells whether the caller has
+     * to {@link Flight#start(Priority)} it.
+     */
+    Flight join(MD5CheckUrl key, HttpMD5CheckUrlFetcher fetcher, CoalescingFetcher participant) {
+        synchronized (flights) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(key, fetcher, participant);
+                flights.put(key, flight);
+            } else if (LogSwitch.LOGGING) {
+                Log.d(TAG, "join running fetch for " + key);
+            }
+            flight.participants.add(participant);
+            return flight;
+        }
+    }
+
+    final class Flight {
+        private final MD5CheckUrl key;
+        private final HttpMD5CheckUrlFetcher fetcher;
+        private final CoalescingFetcher leader;
+        // Guarded by flights.
+        private final List<CoalescingFetcher> participants = new ArrayList<>();
+        private boolean done;
+
+        // Guarded by this.
+        @Nullable
+        private File file;
+        private int refCount;
+
+        Flight(MD5CheckUrl key, HttpMD5CheckUrlFetcher fetcher, CoalescingFetcher leader) {
+            this.key = key;
+            this.fetcher = fetcher;
+            this.leader = leader;
+        }
+
+        boolean isLeader(CoalescingFetcher participant) {
+            return leader == participant;
+        }
+
+        /**
+         * Starts the download, on the calling thread or once the scheduler gives it a slot, see
+         * {@link HttpMD5CheckUrlFetcher#schedule(Priority, Runnable)}.
+         */
+        void start(Priority priority) {
+            fetcher.schedule(priority, new Runnable() {
+                @Override
+                public void run() {
+                    Flight.this.run();
+                }
+            });
+        }
+
+        /**
+         * Runs the download and delivers the result to every participant that is still interested.
+         */
+        @Synthetic
+        void run() {
+            File result = null;
+            Exception error = null;
+            try {
+                result = fetcher.loadVerifiedFile();
+                if (result == null) {
+                    error = new IOException("Canceled");
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                fetcher.cleanup();
+            }
+
+            List<CoalescingFetcher> waiting;
+            synchronized (flights) {
+                if (flights.get(key) == this) {
+                    flights.remove(key);
+                }
+                done = true;
+                waiting = new ArrayList<>(participants);
+            }
+            if (result != null) {
+                synchronized (this) {
+                    file = result;
+                    // Held by the flight until every participant had a chance to acquire it.
+                    refCount = 1;
+                }
+            }
+            for (CoalescingFetcher participant : waiting) {
+                if (result != null) {
+                    participant.onFileReady(this, result);
+                } else {
+                    participant.onFailed(error);
+                }
+            }
+            if (result != null) {
+                release();
+            }
+        }
+
+        @NonNull
+        MD5CheckUrl getUrl() {
+            return key;
+        }
+
+        synchronized void acquire() {
+            refCount++;
+        }
+
+        synchronized void release() {
+            if (--refCount == 0 && file != null) {
+                if (!file.delete() && LogSwitch.LOGGING) {
+                    Log.d(TAG, "Failed to delete spool file " + file);
+                }
+                file = null;
+            }
+        }
+
+        /**
+         * Withdraws a participant, the download itself is only cancelled once nobody is left.
+         */
+        void cancel(CoalescingFetcher participant) {
+            boolean cancelFetch;
+            synchronized (flights) {
+                if (done || !participants.remove(participant)) {
+                    return;
+                }
+                cancelFetch = participants.isEmpty();
+                if (cancelFetch && flights.get(key) == this) {
+                    // Later requests must not join a download that is being cancelled.
+                    flights.remove(key);
+                }
+            }
+            if (cancelFetch) {
+                if (LogSwitch.LOGGING) {
+                    Log.d(TAG, "all requests cancelled, cancel fetch for " + key);
+                }
+                fetcher.cancel();
+            }
+        }
+    }
+}
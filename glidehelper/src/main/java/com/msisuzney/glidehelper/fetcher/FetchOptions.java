@@ -0,0 +1,163 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.load.model.ModelCache;
+import com.bumptech.glide.util.Preconditions;
+import com.msisuzney.glidehelper.MD5EventListener;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import java.io.File;
+
+/**
+ * How {@link HttpMD5CheckUrlLoader} and its {@link HttpMD5CheckUrlFetcher}s download and verify,
+ * e.g.
+ *
+ * <pre>{@code
+ * new HttpMD5CheckUrlLoader.Factory(new FetchOptions.Builder()
+ *         .setSpoolDirectory(new File(context.getCacheDir(), "md5_spool"))
+ *         .setScheduler(new DownloadScheduler(6, 2, 2000))
+ *         .build())
+ * }</pre>
+ *
+ * <p>Per request settings, e.g. the timeout, are Glide options, see {@link HttpMD5CheckUrlLoader}.
+ */
+public final class FetchOptions {
+    @Nullable
+    private final File spoolDirectory;
+    private final HttpMD5CheckUrlFetcher.HttpUrlConnectionFactory connectionFactory;
+    @Nullable
+    private final PartialDownloadStore partialDownloads;
+    @Nullable
+    private final DownloadScheduler scheduler;
+    private final MD5EventListener eventListener;
+    @Nullable
+    private final ModelCache<MD5CheckUrl, MD5CheckUrl> modelCache;
+
+    FetchOptions(Builder builder) {
+        spoolDirectory = builder.spoolDirectory;
+        connectionFactory = builder.connectionFactory;
+        partialDownloads = builder.partialDownloads;
+        scheduler = builder.scheduler;
+        eventListener = builder.eventListener;
+        modelCache = builder.modelCacheSet
+                ? builder.modelCache : new StripedModelCache(StripedModelCache.DEFAULT_SIZE);
+    }
+
+    @Nullable
+    File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    HttpMD5CheckUrlFetcher.HttpUrlConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    @Nullable
+    PartialDownloadStore getPartialDownloads() {
+        return partialDownloads;
+    }
+
+    @Nullable
+    DownloadScheduler getScheduler() {
+        return scheduler;
+    }
+
+    MD5EventListener getEventListener() {
+        return eventListener;
+    }
+
+    @Nullable
+    ModelCache<MD5CheckUrl, MD5CheckUrl> getModelCache() {
+        return modelCache;
+    }
+
+    public static class Builder {
+        @Nullable
+        private File spoolDirectory;
+        private HttpMD5CheckUrlFetcher.HttpUrlConnectionFactory connectionFactory =
+                HttpMD5CheckUrlFetcher.DEFAULT_CONNECTION_FACTORY;
+        @Nullable
+        private PartialDownloadStore partialDownloads;
+        @Nullable
+        private DownloadScheduler scheduler;
+        private MD5EventListener eventListener = MD5EventListener.NONE;
+        @Nullable
+        private ModelCache<MD5CheckUrl, MD5CheckUrl> modelCache;
+        private boolean modelCacheSet;
+
+        /**
+         * Sets the directory for the temporary files used by streaming verification, e.g. a folder
+         * under {@link android.content.Context#getCacheDir()}.
+         *
+         * <p>Defaults to null, i.e. {@code java.io.tmpdir}.
+         */
+        public Builder setSpoolDirectory(@Nullable File spoolDirectory) {
+            this.spoolDirectory = spoolDirectory;
+            return this;
+        }
+
+        /**
+         * Sets what opens the connections, e.g. a pooled HTTP/2 client so loads reuse connections
+         * instead of paying a TCP and TLS handshake each.
+         *
+         * <p>Defaults to {@link java.net.URL#openConnection()}.
+         */
+        public Builder setConnectionFactory(@NonNull HttpMD5CheckUrlFetcher.HttpUrlConnectionFactory connectionFactory) {
+            this.connectionFactory = Preconditions.checkNotNull(connectionFactory);
+            return this;
+        }
+
+        /**
+         * Stages bodies while they download, so a large image that was interrupted, e.g. by a flaky
+         * mobile connection, continues with a {@code Range} request on the next attempt.
+         *
+         * <p>Defaults to null, interrupted downloads start again.
+         */
+        public Builder setPartialDownloads(@Nullable PartialDownloadStore partialDownloads) {
+            this.partialDownloads = partialDownloads;
+            return this;
+        }
+
+        /**
+         * Starts downloads by {@link com.bumptech.glide.Priority}, so the image on screen isn't
+         * queued behind prefetches, and caps the connections per host.
+         *
+         * <p>Defaults to null, every download starts right away.
+         */
+        public Builder setScheduler(@Nullable DownloadScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Sets the listener told about connecting, the first byte, the end of the body and the md5
+         * check of every fetch, e.g. to record where load time goes.
+         *
+         * <p>Defaults to {@link MD5EventListener#NONE}.
+         */
+        public Builder setEventListener(@NonNull MD5EventListener eventListener) {
+            this.eventListener = Preconditions.checkNotNull(eventListener);
+            return this;
+        }
+
+        /**
+         * Sets the cache that interns the models of all loaders built by a
+         * {@link HttpMD5CheckUrlLoader.Factory}, e.g.
+         * {@link StripedModelCache#forMemoryClass(android.content.Context)} to size it for the
+         * device, or null to not intern models.
+         *
+         * <p>Defaults to a {@link StripedModelCache} of {@link StripedModelCache#DEFAULT_SIZE}.
+         */
+        public Builder setModelCache(@Nullable ModelCache<MD5CheckUrl, MD5CheckUrl> modelCache) {
+            this.modelCache = modelCache;
+            modelCacheSet = true;
+            return this;
+        }
+
+        public FetchOptions build() {
+            return new FetchOptions(this);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.bumptech.glide.Priority;
@@ -17,22 +18,29 @@ import com.bumptech.glide.util.ContentLengthInputStream;
 import com.bumptech.glide.util.LogTime;
 import com.bumptech.glide.util.Synthetic;
 import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.MD5EventListener;
 import com.msisuzney.glidehelper.model.MD5CheckUrl;
-import com.msisuzney.glidehelper.utils.MD5Utils;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.IOUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A DataFetcher that retrieves an {@link InputStream} for a Url.
@@ -42,6 +50,11 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
     private static final int MAXIMUM_REDIRECTS = 5;
     @VisibleForTesting
     static final String REDIRECT_HEADER_FIELD = "Location";
+    private static final String RANGE_HEADER_FIELD = "Range";
+    private static final String IF_RANGE_HEADER_FIELD = "If-Range";
+    private static final String CONTENT_RANGE_HEADER_FIELD = "Content-Range";
+    private static final String ETAG_HEADER_FIELD = "ETag";
+    private static final String LAST_MODIFIED_HEADER_FIELD = "Last-Modified";
 
     @VisibleForTesting
     static final HttpUrlConnectionFactory DEFAULT_CONNECTION_FACTORY =
@@ -51,40 +64,134 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
      */
     @VisibleForTesting
     static final int INVALID_STATUS_CODE = -1;
+    private static final String SPOOL_FILE_PREFIX = "md5_spool";
+    private static final String SPOOL_FILE_SUFFIX = ".tmp";
+    private static final int DEFAULT_BODY_BUFFER_SIZE = 32 * 1024;
+    /**
+     * The most preallocated for a body, the buffer grows past it as data arrives.
+     */
+    private static final int MAX_BODY_BUFFER_SIZE = 1024 * 1024;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     private final MD5CheckUrl glideUrl;
     private final int timeout;
     private final HttpUrlConnectionFactory connectionFactory;
 
-    private HttpURLConnection urlConnection;
+    // Also read by the reaper when the fetch is cancelled.
+    private volatile HttpURLConnection urlConnection;
     private InputStream stream;
+    private BodyInputStream body;
     private volatile boolean isCancelled;
     private final DiskCacheStrategy diskCacheStrategy;
+    private final boolean streamingVerification;
+    @Nullable
+    private final File spoolDirectory;
+    @Nullable
+    private final PartialDownloadStore partialDownloads;
+    @Nullable
+    private final DownloadScheduler scheduler;
+    private final MD5EventListener eventListener;
+    private volatile DownloadScheduler.Ticket ticket;
+    private Priority priority = Priority.NORMAL;
+
+    private File spoolFile;
+    private InputStream spoolStream;
 
     public HttpMD5CheckUrlFetcher(MD5CheckUrl glideUrl, int timeout, DiskCacheStrategy diskCacheStrategy) {
-        this(glideUrl, timeout, DEFAULT_CONNECTION_FACTORY, diskCacheStrategy);
+        this(glideUrl, timeout, diskCacheStrategy, true, new FetchOptions.Builder().setModelCache(null).build());
     }
 
-    @VisibleForTesting
-    HttpMD5CheckUrlFetcher(MD5CheckUrl glideUrl, int timeout, HttpUrlConnectionFactory connectionFactory, DiskCacheStrategy diskCacheStrategy) {
+    /**
+     * @param streamingVerification true to hash the body while spooling it to a temporary file,
+     *                              false to buffer the whole body in memory before hashing it.
+     * @param fetchOptions          how to download and verify, see {@link FetchOptions}. Its model
+     *                              cache isn't used.
+     */
+    public HttpMD5CheckUrlFetcher(MD5CheckUrl glideUrl, int timeout, DiskCacheStrategy diskCacheStrategy,
+                                  boolean streamingVerification, @NonNull FetchOptions fetchOptions) {
         this.glideUrl = glideUrl;
         this.timeout = timeout;
-        this.connectionFactory = connectionFactory;
+        this.connectionFactory = fetchOptions.getConnectionFactory();
         this.diskCacheStrategy = diskCacheStrategy;
+        this.streamingVerification = streamingVerification;
+        this.spoolDirectory = fetchOptions.getSpoolDirectory();
+        this.partialDownloads = fetchOptions.getPartialDownloads();
+        this.scheduler = fetchOptions.getScheduler();
+        this.eventListener = fetchOptions.getEventListener();
     }
 
+    /**
+     * With a scheduler this only queues the download and returns, {@code callback} is called from
+     * one of the scheduler's threads.
+     */
     @Override
     public void loadData(
-            @NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            @NonNull Priority priority, @NonNull final DataCallback<? super InputStream> callback) {
+        schedule(priority, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load(callback);
+                } catch (RuntimeException e) {
+                    //在调度器线程上没有Glide兜底，异常也要回调出去
+                    eventListener.fetchFailed(glideUrl, e);
+                    callback.onLoadFailed(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@code download} right away without a scheduler. Otherwise queues it, and the scheduler
+     * runs it on its own thread once this fetch has a slot, or once it is cancelled.
+     */
+    void schedule(@NonNull Priority priority, @NonNull Runnable download) {
+        this.priority = priority;
+        if (scheduler == null) {
+            download.run();
+            return;
+        }
+        String host;
+        try {
+            host = glideUrl.toURL().getHost();
+        } catch (MalformedURLException e) {
+            // Reported by the download itself.
+            host = null;
+        }
+        // Set before the download can start, it releases the slot.
+        DownloadScheduler.Ticket ticket = new DownloadScheduler.Ticket(host, priority, download);
+        this.ticket = ticket;
+        scheduler.enqueue(ticket);
+        // cancel() may have missed the ticket.
+        if (isCancelled) {
+            scheduler.cancel(ticket);
+        }
+    }
+
+    private void load(@NonNull DataCallback<? super InputStream> callback) {
         long startTime = LogTime.getLogTime();
         try {
-            InputStream result = loadDataWithRedirects(glideUrl.toURL(), 0, null, glideUrl.getHeaders());
+            //可续传时数据先写到暂存区，中断后下次请求用Range接着下载，校验通过后才交给Glide
+            if (partialDownloads != null) {
+                File file = loadVerifiedFileInternal();
+                if (file == null) {
+                    callback.onDataReady(null);
+                    return;
+                }
+                spoolFile = file;
+                spoolStream = MD5CheckInputStream.verified(new FileInputStream(file), glideUrl);
+                callback.onDataReady(spoolStream);
+                return;
+            }
+            InputStream result = openBody(glideUrl.getHeaders());
             if (LogSwitch.LOGGING) {
                 Log.d(TAG, " result:  " + result + ",glideUrl:" + glideUrl.toURL());
             }
-            //如果是缓存原始数据，不做校验了，数据会被写到diskcache，然后读取，在DataCacheGenerator那里做md5比对，这样就避免两次比对。
-            if (diskCacheStrategy.equals(DiskCacheStrategy.DATA)) {
-                callback.onDataReady(result);
+            //如果要缓存原始数据，数据会先被写到diskcache再读取，由MD5CheckStreamEncoder在写入时边写边校验，
+            //没有注册该Encoder时在MD5DiskCacheWrapper读取时校验，这样就避免两次比对。
+            if (diskCacheStrategy.isDataCacheable(DataSource.REMOTE)) {
+                callback.onDataReady(result == null ? null : new MD5CheckInputStream(result, glideUrl, eventListener));
                 return;
             }
             long startUps = 0;
@@ -97,27 +204,52 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
                 return;
             }
 
-            String md5Param = glideUrl.getMd5Value();
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            IOUtils.copy(result, baos);
-            byte[] data = baos.toByteArray();
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            String sum = MD5Utils.encode(bais).toLowerCase();
+            if (streamingVerification) {
+                //边下载边计算md5，数据先写到临时文件，校验通过后才交给解码器，内存占用只有一个buffer
+                eventListener.hashStart(glideUrl);
+                boolean matches = spoolAndVerify(result);
+                eventListener.hashEnd(glideUrl, matches);
+                if (LogSwitch.LOGGING) {
+                    Log.d(TAG, "checksum matches:" + matches + ",md5Param:" + glideUrl.getMd5Value());
+                    Log.d(TAG, "md5 checksum cost:" + (SystemClock.uptimeMillis() - startUps) + "ms");
+                }
+                if (matches) {
+                    spoolStream = new FileInputStream(spoolFile);
+                    callback.onDataReady(spoolStream);
+                } else {
+                    RuntimeException e = new RuntimeException("MD5 check failed");
+                    eventListener.fetchFailed(glideUrl, e);
+                    callback.onLoadFailed(e);
+                }
+                return;
+            }
+
+            //按Content-Length预分配，校验通过后直接包装内部数组，不再toByteArray()复制一次
+            //Content-Length不可信，最多预分配1MB，更大的body边读边扩容
+            HttpURLConnection connection = urlConnection;
+            int contentLength = connection != null ? connection.getContentLength() : -1;
+            BodyBuffer baos = new BodyBuffer(contentLength > 0
+                    ? Math.min(contentLength, MAX_BODY_BUFFER_SIZE) : DEFAULT_BODY_BUFFER_SIZE);
+            eventListener.hashStart(glideUrl);
+            boolean matches = glideUrl.getChecksumAlgorithm().copyAndVerify(result, baos, glideUrl.getExpectedDigest());
+            eventListener.hashEnd(glideUrl, matches);
             if (LogSwitch.LOGGING) {
-                Log.d(TAG, "checksum:" + sum + ",md5Param:" + md5Param);
+                Log.d(TAG, "checksum matches:" + matches + ",md5Param:" + glideUrl.getMd5Value());
                 Log.d(TAG, "md5 checksum cost:" + (SystemClock.uptimeMillis() - startUps) + "ms");
             }
-            if (md5Param.equals(sum)) {
-                bais.reset();
-                callback.onDataReady(bais);
+            if (matches) {
+                callback.onDataReady(baos.toInputStream());
             } else {
-                callback.onLoadFailed(new RuntimeException("MD5 check failed"));
+                RuntimeException e = new RuntimeException("MD5 check failed");
+                eventListener.fetchFailed(glideUrl, e);
+                callback.onLoadFailed(e);
             }
 
         } catch (IOException e) {
             if (LogSwitch.LOGGING) {
                 Log.d(TAG, "Failed to load data for url", e);
             }
+            eventListener.fetchFailed(glideUrl, e);
             callback.onLoadFailed(e);
         } finally {
             if (LogSwitch.LOGGING) {
@@ -126,6 +258,172 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
         }
     }
 
+    /**
+     * Downloads the body into a spool file and returns the file once its md5 matches, for callers
+     * that share one download between several requests. Must run as the download passed to
+     * {@link #schedule(Priority, Runnable)}. The caller owns the returned file and must delete it,
+     * {@link #cleanup()} still has to be called to release the connection.
+     *
+     * @return the verified file, or null if the fetch was cancelled.
+     */
+    @Nullable
+    File loadVerifiedFile() throws IOException {
+        try {
+            return loadVerifiedFileInternal();
+        } catch (IOException e) {
+            eventListener.fetchFailed(glideUrl, e);
+            throw e;
+        }
+    }
+
+    @Nullable
+    private File loadVerifiedFileInternal() throws IOException {
+        if (partialDownloads != null) {
+            PartialDownloadStore.Partial partial = partialDownloads.acquire(glideUrl.getChecksumAlgorithm(), glideUrl.getMd5Value());
+            // Null if another fetch is downloading the same body right now, don't resume then.
+            if (partial != null) {
+                return loadResumable(partial);
+            }
+        }
+        InputStream result = openBody(glideUrl.getHeaders());
+        if (result == null) {
+            return null;
+        }
+        eventListener.hashStart(glideUrl);
+        boolean matches = spoolAndVerify(result);
+        eventListener.hashEnd(glideUrl, matches);
+        if (LogSwitch.LOGGING) {
+            Log.d(TAG, "checksum matches:" + matches + ",md5Param:" + glideUrl.getMd5Value());
+        }
+        if (!matches) {
+            throw new IOException("MD5 check failed");
+        }
+        File file = spoolFile;
+        spoolFile = null;
+        return file;
+    }
+
+    @Nullable
+    private File loadResumable(PartialDownloadStore.Partial partial) throws IOException {
+        boolean keep = true;
+        try {
+            long offset = partial.prepare();
+            Map<String, String> headers = glideUrl.getHeaders();
+            if (offset > 0) {
+                headers = new HashMap<>(headers);
+                headers.put(RANGE_HEADER_FIELD, "bytes=" + offset + "-");
+                String validator = partial.getValidator();
+                if (validator != null) {
+                    headers.put(IF_RANGE_HEADER_FIELD, validator);
+                }
+                if (LogSwitch.LOGGING) {
+                    Log.d(TAG, "resume from " + offset + ",url:" + glideUrl.toStringUrl());
+                }
+            }
+            InputStream result;
+            try {
+                result = openBody(headers);
+            } catch (HttpException e) {
+                keep = e.getStatusCode() != HTTP_RANGE_NOT_SATISFIABLE;
+                throw e;
+            }
+            if (result == null) {
+                return null;
+            }
+            eventListener.hashStart(glideUrl);
+            try {
+                partial.begin(offset > 0 && isResumedResponse(urlConnection, offset), getValidator(urlConnection));
+                partial.append(result);
+            } finally {
+                closeConnection();
+                releaseSlot();
+            }
+            boolean matches = partial.matches();
+            eventListener.hashEnd(glideUrl, matches);
+            if (!matches) {
+                keep = false;
+                throw new IOException("MD5 check failed");
+            }
+            File file = partialDownloads.complete(partial);
+            partial = null;
+            return file;
+        } finally {
+            if (partial != null) {
+                if (keep) {
+                    partialDownloads.release(partial);
+                } else {
+                    partialDownloads.discard(partial);
+                }
+            }
+        }
+    }
+
+    private static boolean isResumedResponse(HttpURLConnection urlConnection, long offset) throws IOException {
+        if (urlConnection.getResponseCode() != HTTP_PARTIAL_CONTENT) {
+            return false;
+        }
+        String contentRange = urlConnection.getHeaderField(CONTENT_RANGE_HEADER_FIELD);
+        return contentRange != null && contentRange.startsWith("bytes " + offset + "-");
+    }
+
+    @Nullable
+    private static String getValidator(HttpURLConnection urlConnection) {
+        String etag = urlConnection.getHeaderField(ETAG_HEADER_FIELD);
+        // Weak validators can't be used with If-Range.
+        if (!TextUtils.isEmpty(etag) && !etag.startsWith("W/")) {
+            return etag;
+        }
+        String lastModified = urlConnection.getHeaderField(LAST_MODIFIED_HEADER_FIELD);
+        return TextUtils.isEmpty(lastModified) ? null : lastModified;
+    }
+
+    /**
+     * Copies the response body into a new spool file while hashing it, then releases the connection
+     * so it is not held while Glide decodes.
+     *
+     * @return true if the body matches the expected checksum.
+     */
+    private boolean spoolAndVerify(InputStream result) throws IOException {
+        if (spoolDirectory != null && !spoolDirectory.exists() && !spoolDirectory.mkdirs()) {
+            throw new IOException("Failed to create spool directory " + spoolDirectory);
+        }
+        spoolFile = File.createTempFile(SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX, spoolDirectory);
+        OutputStream os = new FileOutputStream(spoolFile);
+        try {
+            return glideUrl.getChecksumAlgorithm().copyAndVerify(result, os, glideUrl.getExpectedDigest());
+        } finally {
+            try {
+                os.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            closeConnection();
+            releaseSlot();
+        }
+    }
+
+    /**
+     * Connects, the scheduler, if there is one, has already given this fetch a slot.
+     *
+     * @return the body, or null if the fetch was cancelled.
+     */
+    @Nullable
+    private InputStream openBody(Map<String, String> headers) throws IOException {
+        if (isCancelled) {
+            releaseSlot();
+            return null;
+        }
+        return loadDataWithRedirects(glideUrl.toURL(), 0, null, headers);
+    }
+
+    private void releaseSlot() {
+        DownloadScheduler.Ticket ticket = this.ticket;
+        if (ticket != null) {
+            this.ticket = null;
+            scheduler.finish(ticket);
+        }
+    }
+
     private InputStream loadDataWithRedirects(
             URL url, int redirects, URL lastUrl, Map<String, String> headers) throws HttpException {
         if (redirects >= MAXIMUM_REDIRECTS) {
@@ -144,22 +442,29 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
         }
 
         urlConnection = buildAndConfigureConnection(url, headers);
+        // cancel() may have run before the connection existed, don't bother connecting then.
+        if (isCancelled) {
+            return null;
+        }
 
+        eventListener.connectStart(glideUrl, url);
         try {
             // Connect explicitly to avoid errors in decoders if connection fails.
             urlConnection.connect();
             // Set the stream so that it's closed in cleanup to avoid resource leaks. See #2352.
             stream = urlConnection.getInputStream();
         } catch (IOException e) {
-            throw new HttpException(
-                    "Failed to connect or obtain data", getHttpStatusCodeOrInvalid(urlConnection), e);
+            int statusCode = getHttpStatusCodeOrInvalid(urlConnection);
+            eventListener.connectEnd(glideUrl, url, statusCode);
+            throw new HttpException("Failed to connect or obtain data", statusCode, e);
         }
 
+        final int statusCode = getHttpStatusCodeOrInvalid(urlConnection);
+        eventListener.connectEnd(glideUrl, url, statusCode);
         if (isCancelled) {
             return null;
         }
 
-        final int statusCode = getHttpStatusCodeOrInvalid(urlConnection);
         if (isHttpOk(statusCode)) {
             return getStreamForSuccessfulRequest(urlConnection);
         } else if (isHttpRedirect(statusCode)) {
@@ -175,7 +480,8 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
             }
             // Closing the stream specifically is required to avoid leaking ResponseBodys in addition
             // to disconnecting the url connection below. See #2352.
-            cleanup();
+            closeConnection();
+            eventListener.redirect(glideUrl, url, redirectUrl);
             return loadDataWithRedirects(redirectUrl, redirects + 1, url, headers);
         } else if (statusCode == INVALID_STATUS_CODE) {
             throw new HttpException(statusCode);
@@ -246,11 +552,32 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
             throw new HttpException(
                     "Failed to obtain InputStream", getHttpStatusCodeOrInvalid(urlConnection), e);
         }
+        body = new BodyInputStream(stream);
+        stream = body;
         return stream;
     }
 
     @Override
     public void cleanup() {
+        closeConnection();
+        releaseSlot();
+        if (spoolStream != null) {
+            try {
+                spoolStream.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            spoolStream = null;
+        }
+        if (spoolFile != null) {
+            if (!spoolFile.delete() && LogSwitch.LOGGING) {
+                Log.d(TAG, "Failed to delete spool file " + spoolFile);
+            }
+            spoolFile = null;
+        }
+    }
+
+    private void closeConnection() {
         if (stream != null) {
             try {
                 stream.close();
@@ -258,17 +585,35 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
                 // Ignore
             }
         }
-        if (urlConnection != null) {
+        // A connection whose body was read to the end can go back to the pool for keep-alive,
+        // disconnecting it would close the socket on many implementations.
+        boolean reusable = body != null && body.isExhausted() && !isCancelled;
+        if (urlConnection != null && !reusable) {
             urlConnection.disconnect();
         }
         urlConnection = null;
+        body = null;
     }
 
     @Override
     public void cancel() {
-        // TODO: we should consider disconnecting the url connection here, but we can't do so
-        // directly because cancel is often called on the main thread.
         isCancelled = true;
+        DownloadScheduler.Ticket ticket = this.ticket;
+        if (ticket != null) {
+            scheduler.cancel(ticket);
+        }
+        // cancel is often called on the main thread, where disconnecting could block on socket
+        // I/O, so the connection is torn down by the reaper. A read that is blocked on the socket
+        // fails right away, the body stream stops any copy that is in progress.
+        final HttpURLConnection connection = urlConnection;
+        if (connection != null) {
+            Reaper.EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    connection.disconnect();
+                }
+            });
+        }
     }
 
     @NonNull
@@ -283,10 +628,99 @@ public class HttpMD5CheckUrlFetcher implements DataFetcher<InputStream> {
         return DataSource.REMOTE;
     }
 
-    interface HttpUrlConnectionFactory {
+    /**
+     * Opens the {@link HttpURLConnection}s used by the fetcher. Redirects, timeouts and md5
+     * verification stay with the fetcher, so an implementation only decides which HTTP engine
+     * carries the request, e.g. a pooled, HTTP/2 capable client exposed through the
+     * {@link HttpURLConnection} API.
+     *
+     * <p>Bodies that are read to the end are closed without {@link HttpURLConnection#disconnect()},
+     * so the engine can keep the connection alive for the next request to the same host.
+     */
+    public interface HttpUrlConnectionFactory {
         HttpURLConnection build(URL url) throws IOException;
     }
 
+    /**
+     * Remembers whether the response body was read to the end, and fails reads once the fetch has
+     * been cancelled so every copy and hash loop over the body stops.
+     */
+    private final class BodyInputStream extends FilterInputStream {
+        private volatile boolean exhausted;
+        private long byteCount;
+
+        BodyInputStream(InputStream in) {
+            super(in);
+        }
+
+        boolean isExhausted() {
+            return exhausted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            throwIfCancelled();
+            int b = super.read();
+            onRead(b == -1 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            throwIfCancelled();
+            int read = super.read(b, off, len);
+            onRead(read);
+            return read;
+        }
+
+        private void onRead(int read) {
+            if (read == -1) {
+                if (!exhausted) {
+                    exhausted = true;
+                    eventListener.bodyEnd(glideUrl, byteCount);
+                }
+            } else if (read > 0) {
+                if (byteCount == 0) {
+                    eventListener.firstByte(glideUrl);
+                }
+                byteCount += read;
+            }
+        }
+
+        private void throwIfCancelled() throws IOException {
+            if (isCancelled) {
+                throw new IOException("Canceled");
+            }
+        }
+    }
+
+    /**
+     * Buffers a body in memory and reads it back without the copy {@link #toByteArray()} makes.
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * Disconnects cancelled fetches off the caller's thread.
+     */
+    private static final class Reaper {
+        static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "md5-fetch-reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     private static class DefaultHttpUrlConnectionFactory implements HttpUrlConnectionFactory {
 
         @Synthetic
@@ -11,6 +11,7 @@ import com.bumptech.glide.load.model.ModelCache;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.util.Preconditions;
 import com.msisuzney.glidehelper.model.MD5CheckUrl;
 
 import java.io.InputStream;
@@ -37,15 +38,50 @@ public class HttpMD5CheckUrlLoader implements ModelLoader<MD5CheckUrl, InputStre
     public static final Option<DiskCacheStrategy> DISKCACHESTRATEGY =
             Option.memory("com.bumptech.glide.load.engine.DiskCacheStrategy", DiskCacheStrategy.AUTOMATIC);
 
+    /**
+     * A boolean option that decides how the body is verified when it is not written to the data
+     * cache. If true the body is hashed while it is spooled to a temporary file, so only one small
+     * buffer is held in memory. If false the whole body is buffered in memory before hashing.
+     *
+     * <p>Defaults to true.
+     */
+    public static final Option<Boolean> STREAMING_VERIFICATION =
+            Option.memory("com.msisuzney.glidehelper.fetcher.HttpMD5CheckUrlLoader.StreamingVerification", true);
+
+    /**
+     * A boolean option that lets concurrent requests for the same url share one download and one
+     * md5 check, even when their sizes or transformations differ. The shared body is spooled to a
+     * temporary file, so each request reads its own stream over it.
+     *
+     * <p>Defaults to false.
+     */
+    public static final Option<Boolean> COALESCE_REQUESTS =
+            Option.memory("com.msisuzney.glidehelper.fetcher.HttpMD5CheckUrlLoader.CoalesceRequests", false);
+
     @Nullable
     private final ModelCache<MD5CheckUrl, MD5CheckUrl> modelCache;
+    private final FetchOptions fetchOptions;
+    private final FetchCoalescer coalescer;
 
     public HttpMD5CheckUrlLoader() {
-        this(null);
+        this((ModelCache<MD5CheckUrl, MD5CheckUrl>) null);
     }
 
     public HttpMD5CheckUrlLoader(@Nullable ModelCache<MD5CheckUrl, MD5CheckUrl> modelCache) {
-        this.modelCache = modelCache;
+        this(new FetchOptions.Builder().setModelCache(modelCache).build());
+    }
+
+    /**
+     * @param fetchOptions how to download and verify, see {@link FetchOptions}.
+     */
+    public HttpMD5CheckUrlLoader(@NonNull FetchOptions fetchOptions) {
+        this(fetchOptions, new FetchCoalescer());
+    }
+
+    HttpMD5CheckUrlLoader(FetchOptions fetchOptions, FetchCoalescer coalescer) {
+        this.modelCache = fetchOptions.getModelCache();
+        this.fetchOptions = fetchOptions;
+        this.coalescer = coalescer;
     }
 
     @Override
@@ -54,7 +90,9 @@ public class HttpMD5CheckUrlLoader implements ModelLoader<MD5CheckUrl, InputStre
         // GlideUrls memoize parsed URLs so caching them saves a few object instantiations and time
         // spent parsing urls.
         MD5CheckUrl url = model;
-        if (modelCache != null) {
+        // Content addressed urls, and urls with a cache key policy, can be equal while their urls
+        // differ, interning them would download from whichever url was seen first.
+        if (modelCache != null && model.isKeyedByUrl()) {
             url = modelCache.get(model, 0, 0);
             if (url == null) {
                 modelCache.put(model, 0, 0, model);
@@ -63,7 +101,13 @@ public class HttpMD5CheckUrlLoader implements ModelLoader<MD5CheckUrl, InputStre
         }
         int timeout = options.get(TIMEOUT);
         DiskCacheStrategy diskCacheStrategy = options.get(DISKCACHESTRATEGY);
-        return new LoadData<>(url, new HttpMD5CheckUrlFetcher(url, timeout, diskCacheStrategy));
+        boolean streamingVerification = options.get(STREAMING_VERIFICATION);
+        HttpMD5CheckUrlFetcher fetcher =
+                new HttpMD5CheckUrlFetcher(url, timeout, diskCacheStrategy, streamingVerification, fetchOptions);
+        if (options.get(COALESCE_REQUESTS)) {
+            return new LoadData<>(url, new CoalescingFetcher(coalescer, url, fetcher));
+        }
+        return new LoadData<>(url, fetcher);
     }
 
     @Override
@@ -75,12 +119,25 @@ public class HttpMD5CheckUrlLoader implements ModelLoader<MD5CheckUrl, InputStre
      * The default factory for {@link com.bumptech.glide.load.model.stream.HttpGlideUrlLoader}s.
      */
     public static class Factory implements ModelLoaderFactory<MD5CheckUrl, InputStream> {
-        private final ModelCache<MD5CheckUrl, MD5CheckUrl> modelCache = new ModelCache<>(500);
+        private final FetchOptions fetchOptions;
+        private final FetchCoalescer coalescer = new FetchCoalescer();
+
+        public Factory() {
+            this(new FetchOptions.Builder().build());
+        }
+
+        /**
+         * @param fetchOptions how the loaders built by this factory download and verify, see
+         *                     {@link FetchOptions}. Its model cache is shared by all of them.
+         */
+        public Factory(@NonNull FetchOptions fetchOptions) {
+            this.fetchOptions = Preconditions.checkNotNull(fetchOptions);
+        }
 
         @NonNull
         @Override
         public ModelLoader<MD5CheckUrl, InputStream> build(MultiModelLoaderFactory multiFactory) {
-            return new HttpMD5CheckUrlLoader(modelCache);
+            return new HttpMD5CheckUrlLoader(fetchOptions, coalescer);
         }
 
         @Override
@@ -0,0 +1,230 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.msisuzney.glidehelper.MD5EventListener;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that computes the checksum, md5 unless another {@link ChecksumAlgorithm}
+ * is given, of the bytes read through it, so the body can be
+ * verified by whoever consumes it, e.g. {@link com.msisuzney.glidehelper.diskcache.MD5CheckStreamEncoder}
+ * while it writes the data cache.
+ *
+ * <p>{@link #isVerified()} is only true once the stream has been read to the end and the digest
+ * matches the expected md5 value. Streams over data that was already verified, see
+ * {@link #verified(InputStream, String)}, skip the hashing.
+ *
+ * <p>Built for a {@link MD5CheckUrl} with a {@link MD5EventListener}, it reports the hash and a
+ * failed download or md5 mismatch itself, since nobody else sees the outcome on this path.
+ */
+public class MD5CheckInputStream extends FilterInputStream {
+    private final String md5Value;
+    private final ChecksumAlgorithm algorithm;
+    private final byte[] expectedDigest;
+    /**
+     * False for streams over data that was already verified.
+     */
+    private final boolean hashed;
+    /**
+     * Taken from the algorithm's pool, handed back once the stream was read to the end or closed.
+     */
+    @Nullable
+    private ChecksumAlgorithm.Hasher digester;
+    @Nullable
+    private final MD5CheckUrl url;
+    private final MD5EventListener eventListener;
+    private boolean verified;
+    private boolean exhausted;
+    private boolean failed;
+
+    public MD5CheckInputStream(@NonNull InputStream in, @NonNull String md5Value) {
+        this(in, md5Value, ChecksumAlgorithm.MD5);
+    }
+
+    public MD5CheckInputStream(@NonNull InputStream in, @NonNull String md5Value, @NonNull ChecksumAlgorithm algorithm) {
+        this(in, md5Value, algorithm, decodeHex(md5Value), algorithm.acquireHasher(), null, MD5EventListener.NONE);
+    }
+
+    /**
+     * Verifies against the checksum {@code url} decoded when it was built.
+     */
+    public MD5CheckInputStream(@NonNull InputStream in, @NonNull MD5CheckUrl url) {
+        this(in, url, MD5EventListener.NONE);
+    }
+
+    /**
+     * @param eventListener told when hashing starts and ends, and about a read error or an md5
+     *                      mismatch, see {@link MD5EventListener}.
+     */
+    public MD5CheckInputStream(@NonNull InputStream in, @NonNull MD5CheckUrl url,
+                               @NonNull MD5EventListener eventListener) {
+        this(in, url.getMd5Value(), url.getChecksumAlgorithm(), url.getExpectedDigest(),
+                url.getChecksumAlgorithm().acquireHasher(), url, eventListener);
+        //边下载边校验，下载前就算开始校验
+        eventListener.hashStart(url);
+    }
+
+    private MD5CheckInputStream(@NonNull InputStream in, @NonNull String md5Value, ChecksumAlgorithm algorithm,
+                                byte[] expectedDigest, @Nullable ChecksumAlgorithm.Hasher digester,
+                                @Nullable MD5CheckUrl url, MD5EventListener eventListener) {
+        super(in);
+        this.md5Value = md5Value;
+        this.algorithm = algorithm;
+        this.expectedDigest = expectedDigest;
+        this.digester = digester;
+        this.hashed = digester != null;
+        this.url = url;
+        this.eventListener = eventListener;
+    }
+
+    private static byte[] decodeHex(String md5Value) {
+        byte[] digest = ChecksumAlgorithm.decodeHex(md5Value);
+        return digest != null ? digest : new byte[0];
+    }
+
+    /**
+     * Wraps data whose md5 has already been checked, e.g. a verified spool file, so it is not
+     * hashed a second time.
+     */
+    public static MD5CheckInputStream verified(@NonNull InputStream in, @NonNull String md5Value) {
+        return new MD5CheckInputStream(in, md5Value, ChecksumAlgorithm.MD5, new byte[0], null, null,
+                MD5EventListener.NONE);
+    }
+
+    /**
+     * Wraps data whose checksum has already been checked against {@code url}, e.g. a verified
+     * spool file, so it is not hashed a second time.
+     */
+    public static MD5CheckInputStream verified(@NonNull InputStream in, @NonNull MD5CheckUrl url) {
+        return new MD5CheckInputStream(in, url.getMd5Value(), url.getChecksumAlgorithm(), new byte[0], null, null,
+                MD5EventListener.NONE);
+    }
+
+    @NonNull
+    public String getMd5Value() {
+        return md5Value;
+    }
+
+    /**
+     * Returns the algorithm {@link #getMd5Value()} was computed with.
+     */
+    @NonNull
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns true if every byte of the underlying stream has been read and its md5 matches
+     * {@link #getMd5Value()}.
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b;
+        try {
+            b = super.read();
+        } catch (IOException e) {
+            onFailed(e);
+            throw e;
+        }
+        if (b == -1) {
+            onExhausted();
+        } else if (digester != null) {
+            digester.update((byte) b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read;
+        try {
+            read = super.read(b, off, len);
+        } catch (IOException e) {
+            onFailed(e);
+            throw e;
+        }
+        if (read == -1) {
+            onExhausted();
+        } else if (digester != null) {
+            digester.update(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes still have to be hashed.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // Not supported, the digest can't be rewound.
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void onExhausted() {
+        if (exhausted) {
+            return;
+        }
+        exhausted = true;
+        verified = !hashed || (digester != null && algorithm.matches(digester, expectedDigest));
+        releaseDigester();
+        if (url != null) {
+            eventListener.hashEnd(url, verified);
+            if (!verified) {
+                onFailed(new IOException("MD5 check failed"));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // A stream that is closed early, e.g. by a failed encode, is never verified.
+        releaseDigester();
+        super.close();
+    }
+
+    private void releaseDigester() {
+        if (digester != null) {
+            algorithm.releaseHasher(digester);
+            digester = null;
+        }
+    }
+
+    private void onFailed(IOException e) {
+        if (url != null && !failed) {
+            failed = true;
+            eventListener.fetchFailed(url, e);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A staging area for partially downloaded bodies, keyed by their checksum, so an interrupted
+ * download can continue with a {@code Range} request instead of starting again from byte zero.
+ *
+ * <p>The md5 state of a partial body is kept in memory, a retry in the same process only hashes
+ * the new bytes. After a restart the state is rebuilt from the staged file, which is still cheaper
+ * than downloading it again. Bodies are always verified against the md5 value once complete, so a
+ * server that ignores or mishandles the range can't produce a wrong image.
+ *
+ * <p>Pass an instance to {@link HttpMD5CheckUrlLoader.Factory} to enable resumable downloads.
+ */
+public final class PartialDownloadStore {
+    private static final String TAG = "PartialDownloadStore";
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+
+    private final File directory;
+    private final long maxSize;
+    private final Map<String, Partial> partials = new HashMap<>();
+    private final Set<String> inUse = new HashSet<>();
+
+    /**
+     * @param directory the staging directory, it should not be shared with anything else.
+     * @param maxSize   the max bytes kept for partial bodies, the oldest are deleted first.
+     */
+    public PartialDownloadStore(@NonNull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the partial body for the checksum {@code md5}, or null if another fetch is
+     * downloading it right now. The caller must hand it back with {@link #release(Partial)},
+     * {@link #discard(Partial)} or {@link #complete(Partial)}.
+     */
+    @Nullable
+    synchronized Partial acquire(@NonNull ChecksumAlgorithm algorithm, @NonNull String md5) {
+        // The checksum is hex, so the separator keeps keys of different algorithms apart.
+        String key = algorithm.getName() + '_' + md5;
+        if (!inUse.add(key)) {
+            return null;
+        }
+        Partial partial = partials.get(key);
+        if (partial == null) {
+            partial = new Partial(key, md5, algorithm, new File(directory, toFileName(key)));
+            partials.put(key, partial);
+        }
+        return partial;
+    }
+
+    /**
+     * Keeps what has been downloaded so far for the next attempt.
+     */
+    void release(@NonNull Partial partial) {
+        synchronized (this) {
+            inUse.remove(partial.key);
+            if (partial.length > 0) {
+                trimToSize();
+                return;
+            }
+            partials.remove(partial.key);
+        }
+        delete(partial.file);
+    }
+
+    /**
+     * Drops a partial body that can't be resumed, e.g. because its md5 didn't match.
+     */
+    void discard(@NonNull Partial partial) {
+        synchronized (this) {
+            inUse.remove(partial.key);
+            partials.remove(partial.key);
+        }
+        delete(partial.file);
+    }
+
+    /**
+     * Hands the complete body over to the caller, who becomes responsible for deleting it.
+     */
+    synchronized File complete(@NonNull Partial partial) {
+        inUse.remove(partial.key);
+        partials.remove(partial.key);
+        return partial.file;
+    }
+
+    /**
+     * Deletes the oldest partial bodies that aren't being downloaded until the rest fit in
+     * {@code maxSize}.
+     */
+    synchronized void trimToSize() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long l1 = o1.lastModified();
+                long l2 = o2.lastModified();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+            String key = toKey(file.getName());
+            if (key != null && inUse.contains(key)) {
+                continue;
+            }
+            size -= file.length();
+            if (key != null) {
+                partials.remove(key);
+            }
+            delete(file);
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete() && LogSwitch.LOGGING) {
+            Log.d(TAG, "Failed to delete " + file);
+        }
+    }
+
+    private static String toFileName(String key) {
+        StringBuilder sb = new StringBuilder(key.length() + PARTIAL_FILE_SUFFIX.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean safe = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            sb.append(safe ? c : '_');
+        }
+        return sb.append(PARTIAL_FILE_SUFFIX).toString();
+    }
+
+    @Nullable
+    private String toKey(String fileName) {
+        for (String key : partials.keySet()) {
+            if (toFileName(key).equals(fileName)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A body that is downloaded in one or more attempts. Only used by one fetch at a time.
+     */
+    static final class Partial {
+        final String key;
+        final String md5;
+        final ChecksumAlgorithm algorithm;
+        final byte[] expectedDigest;
+        final File file;
+        private long length;
+        @Nullable
+        private ChecksumAlgorithm.Hasher digester;
+        @Nullable
+        private String validator;
+
+        Partial(String key, String md5, ChecksumAlgorithm algorithm, File file) {
+            this.key = key;
+            this.md5 = md5;
+            this.algorithm = algorithm;
+            byte[] expectedDigest = ChecksumAlgorithm.decodeHex(md5);
+            this.expectedDigest = expectedDigest != null ? expectedDigest : new byte[0];
+            this.file = file;
+        }
+
+        /**
+         * Returns the number of bytes that can be resumed from, rebuilding the checksum state from the
+         * staged file if it is not in memory.
+         */
+        long prepare() throws IOException {
+            if (digester != null && file.length() == length) {
+                return length;
+            }
+            digester = algorithm.newHasher();
+            length = 0;
+            validator = null;
+            if (!file.exists()) {
+                return 0;
+            }
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digester.update(buffer, 0, read);
+                    length += read;
+                }
+            } finally {
+                in.close();
+            }
+            return length;
+        }
+
+        /**
+         * Returns the ETag or Last-Modified value of the response the staged bytes came from, used
+         * for {@code If-Range}.
+         */
+        @Nullable
+        String getValidator() {
+            return validator;
+        }
+
+        /**
+         * Starts a new response. If {@code resume} is false the staged bytes are dropped.
+         */
+        void begin(boolean resume, @Nullable String validator) throws IOException {
+            if (!resume) {
+                length = 0;
+                digester = algorithm.newHasher();
+                truncate();
+            }
+            this.validator = validator;
+        }
+
+        /**
+         * Appends {@code in} to the staged file. The checksum state always matches the bytes that made
+         * it to disk, so a failure can be resumed from.
+         */
+        void append(InputStream in) throws IOException {
+            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Failed to create " + file.getParentFile());
+            }
+            OutputStream os = new FileOutputStream(file, true);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    os.write(buffer, 0, read);
+                    digester.update(buffer, 0, read);
+                    length += read;
+                }
+            } finally {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+                if (file.length() != length) {
+                    truncate();
+                }
+            }
+        }
+
+        /**
+         * Returns true if the staged bytes match the checksum. Only valid once.
+         */
+        boolean matches() {
+            ChecksumAlgorithm.Hasher digester = this.digester;
+            this.digester = null;
+            return algorithm.matches(digester, expectedDigest);
+        }
+
+        private void truncate() throws IOException {
+            if (!file.exists()) {
+                return;
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.load.model.ModelCache;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ModelCache} for interning {@link MD5CheckUrl}s that is split into independently locked
+ * stripes, so {@link HttpMD5CheckUrlLoader#buildLoadData} on several of Glide's source executor
+ * threads doesn't queue on one lock the way it does with the single synchronized LRU of
+ * {@link ModelCache}.
+ *
+ * <p>Each stripe evicts its own least recently used models, so eviction is approximately LRU
+ * across the cache. Width and height are ignored, the loader interns models regardless of the
+ * requested size.
+ *
+ * <p>Call {@link #trimMemory(int)} from {@link ComponentCallbacks2#onTrimMemory(int)} next to
+ * Glide's own trimming to release the cache when the app goes to the background.
+ */
+public final class StripedModelCache extends ModelCache<MD5CheckUrl, MD5CheckUrl> {
+    public static final int DEFAULT_SIZE = 500;
+    /**
+     * Models kept per megabyte of {@link ActivityManager#getMemoryClass()}, a model with its url
+     * and cached key takes roughly 1KB.
+     */
+    private static final int MODELS_PER_MEMORY_CLASS_MB = 8;
+    private static final int MAX_MEMORY_AWARE_SIZE = 4096;
+
+    private final Stripe[] stripes;
+    private final int maxSize;
+
+    public StripedModelCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public StripedModelCache(int maxSize) {
+        this(maxSize, defaultConcurrencyLevel());
+    }
+
+    /**
+     * @param concurrencyLevel the number of threads expected to use the cache at once, rounded up
+     *                         to a power of two stripes.
+     */
+    public StripedModelCache(int maxSize, int concurrencyLevel) {
+        // ModelCache's own LRU is never used.
+        super(1);
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        int stripeCount = 1;
+        while (stripeCount < concurrencyLevel && stripeCount < maxSize) {
+            stripeCount <<= 1;
+        }
+        stripes = new Stripe[stripeCount];
+        int stripeSize = (maxSize + stripeCount - 1) / stripeCount;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeSize);
+        }
+        this.maxSize = stripeSize * stripeCount;
+    }
+
+    /**
+     * Returns a cache sized for the memory class of the device, from {@link #DEFAULT_SIZE} models on
+     * small devices up to 4096 on large ones.
+     */
+    @NonNull
+    public static StripedModelCache forMemoryClass(@NonNull Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int size = DEFAULT_SIZE;
+        if (activityManager != null) {
+            size = Math.max(DEFAULT_SIZE,
+                    Math.min(MAX_MEMORY_AWARE_SIZE, activityManager.getMemoryClass() * MODELS_PER_MEMORY_CLASS_MB));
+        }
+        return new StripedModelCache(size);
+    }
+
+    private static int defaultConcurrencyLevel() {
+        // Glide's source executor has up to 4 threads, disk cache and prefetch threads come on top.
+        return Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @Nullable
+    @Override
+    public MD5CheckUrl get(MD5CheckUrl model, int width, int height) {
+        return stripeFor(model).get(model);
+    }
+
+    @Override
+    public void put(MD5CheckUrl model, int width, int height, MD5CheckUrl value) {
+        stripeFor(model).put(model, value);
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.trimToSize(0);
+        }
+    }
+
+    /**
+     * Clears the cache when the app is in the background and halves it when its UI is hidden or
+     * memory is critically low, see {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            for (Stripe stripe : stripes) {
+                stripe.trimToSize(stripe.maxSize / 2);
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        long hits = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                hits += stripe.hits;
+            }
+        }
+        return hits;
+    }
+
+    public long getMissCount() {
+        long misses = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                misses += stripe.misses;
+            }
+        }
+        return misses;
+    }
+
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evictions += stripe.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    public float getHitRate() {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        return requests == 0 ? 0 : (float) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedModelCache{size=" + size() + ", maxSize=" + maxSize + ", stripes=" + stripes.length
+                + ", hitRate=" + getHitRate() + ", evictions=" + getEvictionCount() + '}';
+    }
+
+    private Stripe stripeFor(MD5CheckUrl model) {
+        int hash = model.hashCode();
+        // Spread the high bits, the stripe count is a power of two.
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+        final int maxSize;
+        // Guarded by this.
+        final Map<MD5CheckUrl, MD5CheckUrl> map;
+        long hits;
+        long misses;
+        long evictions;
+
+        Stripe(int maxSize) {
+            this.maxSize = maxSize;
+            map = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized MD5CheckUrl get(MD5CheckUrl model) {
+            MD5CheckUrl value = map.get(model);
+            if (value != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return value;
+        }
+
+        synchronized void put(MD5CheckUrl model, MD5CheckUrl value) {
+            map.put(model, value);
+            trimToSize(maxSize);
+        }
+
+        synchronized void trimToSize(int size) {
+            Iterator<MD5CheckUrl> it = map.keySet().iterator();
+            while (map.size() > size && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.msisuzney.glidehelper.model;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.util.Preconditions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which parts of a url identify the image in the memory and disk caches, so urls that
+ * only differ in expiring tokens or timestamps, e.g. {@code ?md5=...&t=...&sign=...}, share one
+ * cache entry instead of downloading the same bytes again.
+ *
+ * <p>Only the cache key is affected, requests always use the full url. Query parameter names are
+ * matched as they appear in the url, without decoding.
+ *
+ * @see MD5CheckUrl.Builder#setCacheKeyPolicy(CacheKeyPolicy)
+ */
+public final class CacheKeyPolicy {
+    /**
+     * Uses the whole url as the cache key, the default.
+     */
+    public static final CacheKeyPolicy FULL_URL = new CacheKeyPolicy(Collections.<String>emptySet(), false, false);
+
+    private final Set<String> names;
+    private final boolean keepListed;
+    private final boolean ignoreHost;
+
+    private CacheKeyPolicy(Set<String> names, boolean keepListed, boolean ignoreHost) {
+        this.names = names;
+        this.keepListed = keepListed;
+        this.ignoreHost = ignoreHost;
+    }
+
+    /**
+     * Returns a policy that leaves the query parameters {@code names} out of the cache key, e.g.
+     * {@code ignoring("t", "sign")}.
+     */
+    @NonNull
+    public static CacheKeyPolicy ignoring(@NonNull String... names) {
+        return new CacheKeyPolicy(toSet(names), false, false);
+    }
+
+    /**
+     * Returns a policy that keeps only the query parameters {@code names} in the cache key, e.g.
+     * {@code keeping("w", "h")} for urls whose other parameters are all volatile. The md5 parameter
+     * is always kept, see {@link MD5CheckUrl.Builder#setCacheKeyPolicy(CacheKeyPolicy)}.
+     */
+    @NonNull
+    public static CacheKeyPolicy keeping(@NonNull String... names) {
+        return new CacheKeyPolicy(toSet(names), true, false);
+    }
+
+    /**
+     * Returns a copy of this policy that also leaves the scheme, host and port out of the cache key,
+     * so the same path on different CDN mirrors is cached once.
+     */
+    @NonNull
+    public CacheKeyPolicy ignoringHost() {
+        return new CacheKeyPolicy(names, keepListed, true);
+    }
+
+    /**
+     * Returns a copy of this policy that keeps the query parameter {@code name} in the cache key,
+     * this policy itself if it already does.
+     */
+    @NonNull
+    CacheKeyPolicy retaining(@NonNull String name) {
+        if (this == FULL_URL || names.contains(name) == keepListed) {
+            return this;
+        }
+        Set<String> retained = new HashSet<>(names);
+        if (keepListed) {
+            retained.add(name);
+        } else {
+            retained.remove(name);
+        }
+        return new CacheKeyPolicy(Collections.unmodifiableSet(retained), keepListed, ignoreHost);
+    }
+
+    private static Set<String> toSet(String[] names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Preconditions.checkNotNull(names))));
+    }
+
+    /**
+     * Returns the part of {@code url} that identifies the image, {@code url} itself if nothing is
+     * left out.
+     */
+    @NonNull
+    public String apply(@NonNull String url) {
+        if (this == FULL_URL) {
+            return url;
+        }
+        int start = 0;
+        if (ignoreHost) {
+            int authority = url.indexOf("//");
+            if (authority != -1) {
+                int pathStart = indexOfAny(url, authority + 2, url.length(), "/?#");
+                start = pathStart != -1 ? pathStart : url.length();
+            }
+        }
+        int queryStart = url.indexOf('?', start);
+        if (queryStart == -1) {
+            return url.substring(start);
+        }
+        int queryEnd = url.indexOf('#', queryStart);
+        if (queryEnd == -1) {
+            queryEnd = url.length();
+        }
+
+        // Only allocated once a parameter is left out.
+        StringBuilder key = null;
+        boolean kept = false;
+        for (int pos = queryStart + 1; pos <= queryEnd; ) {
+            int ampersand = url.indexOf('&', pos);
+            if (ampersand == -1 || ampersand > queryEnd) {
+                ampersand = queryEnd;
+            }
+            int nameEnd = url.indexOf('=', pos);
+            if (nameEnd == -1 || nameEnd > ampersand) {
+                nameEnd = ampersand;
+            }
+            if (names.contains(url.substring(pos, nameEnd)) == keepListed) {
+                if (key != null) {
+                    key.append(kept ? '&' : '?').append(url, pos, ampersand);
+                }
+                kept = true;
+            } else if (key == null) {
+                key = new StringBuilder(url.length());
+                // Everything before this parameter, without the '?' or '&' in front of it.
+                key.append(url, start, pos - 1);
+            }
+            pos = ampersand + 1;
+        }
+        if (key == null) {
+            return start == 0 ? url : url.substring(start);
+        }
+        return key.append(url, queryEnd, url.length()).toString();
+    }
+
+    private static int indexOfAny(String input, int pos, int limit, String delimiters) {
+        for (int i = pos; i < limit; i++) {
+            if (delimiters.indexOf(input.charAt(i)) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof CacheKeyPolicy) {
+            CacheKeyPolicy other = (CacheKeyPolicy) o;
+            return names.equals(other.names) && keepListed == other.keepListed && ignoreHost == other.ignoreHost;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = names.hashCode();
+        result = 31 * result + (keepListed ? 1 : 0);
+        return 31 * result + (ignoreHost ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheKeyPolicy{" + (keepListed ? "keeping=" : "ignoring=") + names + ", ignoreHost=" + ignoreHost + '}';
+    }
+}
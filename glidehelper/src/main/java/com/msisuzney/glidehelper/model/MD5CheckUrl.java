@@ -11,12 +11,14 @@ import com.bumptech.glide.R;
 import com.bumptech.glide.load.Key;
 import com.bumptech.glide.load.model.Headers;
 import com.bumptech.glide.util.Preconditions;
-import com.msisuzney.glidehelper.utils.HttpUrl;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+import com.msisuzney.glidehelper.utils.UrlQuery;
 
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.MessageDigest;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -32,10 +34,24 @@ import java.util.Map;
  *
  * <p>This class can also optionally wrap {@link Headers} for
  * convenience.
+ *
+ * <p>When built with {@link Builder#setContentAddressed(boolean)}, the md5 value instead of the url
+ * identifies the image, so the same image served under different urls is downloaded and stored
+ * only once.
+ *
+ * <p>The parameter holds an md5 digest unless another algorithm is set with
+ * {@link Builder#setChecksumAlgorithm(ChecksumAlgorithm)}.
+ *
+ * <p>With a {@link CacheKeyPolicy}, see {@link Builder#setCacheKeyPolicy(CacheKeyPolicy)}, volatile
+ * parts of the url like auth tokens are left out of the cache key, the full url is still requested.
  */
 public class MD5CheckUrl implements Key {
     private static final String TAG = "MD5CheckUrl";
     private static final String ALLOWED_URI_CHARS = "@#&=*+-_.,:!?()/~'%;$";
+    /**
+     * Left as they are by {@link Uri#encode(String, String)} even when not allowed.
+     */
+    private static final String UNRESERVED_CHARS = "_-!.~'()*";
     private final Headers headers;
     @Nullable
     private final URL url;
@@ -48,56 +64,177 @@ public class MD5CheckUrl implements Key {
     private URL safeUrl;
     @Nullable
     private volatile byte[] cacheKeyBytes;
+    @Nullable
+    private volatile String cacheKey;
 
     private int hashCode;
 
     @NonNull
     private final String md5Value;
-
+    private final boolean contentAddressed;
+    @NonNull
+    private final ChecksumAlgorithm checksumAlgorithm;
+    @NonNull
+    private final byte[] expectedDigest;
+    @NonNull
+    private final CacheKeyPolicy cacheKeyPolicy;
 
     public static class Builder {
         private String url;
         private String md5ParamKey;
+        private boolean contentAddressed;
+        private ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+        private CacheKeyPolicy cacheKeyPolicy = CacheKeyPolicy.FULL_URL;
 
         public Builder(@NonNull String url, @NonNull String md5ParamKey) {
             this.url = url;
             this.md5ParamKey = md5ParamKey;
         }
 
+        /**
+         * If true, the md5 value is used as the memory and disk cache identity instead of the url,
+         * so any url carrying an md5 that is already cached is served from the cache without a
+         * network request. The url is still used to download the image on a miss.
+         *
+         * <p>Defaults to false.
+         */
+        public Builder setContentAddressed(boolean contentAddressed) {
+            this.contentAddressed = contentAddressed;
+            return this;
+        }
+
+        /**
+         * Sets the algorithm the parameter value was computed with, e.g. {@link ChecksumAlgorithm#XXH64}
+         * to cut verification cost on slow devices or {@link ChecksumAlgorithm#SHA256} for assets
+         * that need real integrity.
+         *
+         * <p>Defaults to {@link ChecksumAlgorithm#MD5}.
+         */
+        public Builder setChecksumAlgorithm(@NonNull ChecksumAlgorithm checksumAlgorithm) {
+            this.checksumAlgorithm = Preconditions.checkNotNull(checksumAlgorithm);
+            return this;
+        }
+
+        /**
+         * Sets which parts of the url make up the memory and disk cache key, e.g.
+         * {@code CacheKeyPolicy.ignoring("t", "sign")} so a refreshed token still hits the cache.
+         * Ignored for content addressed urls, their key is the md5 value.
+         *
+         * <p>The md5 parameter is always part of the key, even if the policy leaves it out, so urls
+         * with different md5 values never share a cache entry.
+         *
+         * <p>Defaults to {@link CacheKeyPolicy#FULL_URL}.
+         */
+        public Builder setCacheKeyPolicy(@NonNull CacheKeyPolicy cacheKeyPolicy) {
+            //md5不同的url内容不同，不能共用一个缓存key
+            this.cacheKeyPolicy = Preconditions.checkNotNull(cacheKeyPolicy).retaining(md5ParamKey);
+            return this;
+        }
+
+        /**
+         * Returns a {@link MD5CheckUrl}, or the url itself if it isn't a valid http/https url or has
+         * no md5 value. Cheap enough for the main thread: the url is scanned once for the md5
+         * parameter, see {@link UrlQuery}.
+         */
         public Object build() {
-            HttpUrl httpUrl = HttpUrl.parse(url);
-            if (httpUrl == null) {
-                Log.e(TAG, "use String model,because parse HttpUrl failed");
+            MD5CheckUrl md5CheckUrl = buildOrNull();
+            if (md5CheckUrl == null) {
+                Log.e(TAG, "use String model, because the url is invalid or there isn't md5 value with key:" + md5ParamKey);
                 return url;
             }
+            return md5CheckUrl;
+        }
 
-            String md5ParamVal = httpUrl.queryParameter(md5ParamKey);
+        /**
+         * Returns null instead of the url, without logging, see {@link MD5CheckUrlBatchBuilder}.
+         */
+        @Nullable
+        MD5CheckUrl buildOrNull() {
+            String md5ParamVal = UrlQuery.queryParameter(url, md5ParamKey);
             if (TextUtils.isEmpty(md5ParamVal)) {
-                Log.e(TAG, "use String model, because there isn't md5 value with key:" + md5ParamKey);
-                return url;
+                return null;
             }
-            return new MD5CheckUrl(url, md5ParamVal);
+            return new MD5CheckUrl(url, md5ParamVal, contentAddressed, checksumAlgorithm, cacheKeyPolicy);
         }
     }
 
 
-    private MD5CheckUrl(String url, String md5ParamVal) {
-        this(url, md5ParamVal, Headers.DEFAULT);
+    private MD5CheckUrl(String url, String md5ParamVal, boolean contentAddressed, ChecksumAlgorithm checksumAlgorithm,
+                        CacheKeyPolicy cacheKeyPolicy) {
+        this(url, md5ParamVal, Headers.DEFAULT, contentAddressed, checksumAlgorithm, cacheKeyPolicy);
     }
 
 
-    private MD5CheckUrl(@NonNull String url, @NonNull String md5ParamVal, Headers headers) {
+    private MD5CheckUrl(@NonNull String url, @NonNull String md5ParamVal, Headers headers, boolean contentAddressed,
+                        ChecksumAlgorithm checksumAlgorithm, CacheKeyPolicy cacheKeyPolicy) {
         this.url = null;
         this.stringUrl = Preconditions.checkNotEmpty(url);
         this.headers = Preconditions.checkNotNull(headers);
         this.md5Value = Preconditions.checkNotEmpty(md5ParamVal);
+        this.contentAddressed = contentAddressed;
+        this.checksumAlgorithm = checksumAlgorithm;
+        this.cacheKeyPolicy = cacheKeyPolicy;
+        byte[] expectedDigest = ChecksumAlgorithm.decodeHex(md5ParamVal);
+        // A value that isn't hex never matches.
+        this.expectedDigest = expectedDigest != null ? expectedDigest : new byte[0];
+        //大部分url本身就不需要转义，直接用原串，省掉第一次请求时的Uri.encode
+        if (isSafe(url)) {
+            safeStringUrl = url;
+        }
+    }
+
+    private static boolean isSafe(String url) {
+        for (int i = 0, length = url.length(); i < length; i++) {
+            char c = url.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || UNRESERVED_CHARS.indexOf(c) != -1 || ALLOWED_URI_CHARS.indexOf(c) != -1;
+            if (!safe) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Returns the expected checksum of the image, computed with {@link #getChecksumAlgorithm()}.
+     */
     @NonNull
     public String getMd5Value() {
         return md5Value;
     }
 
+    @NonNull
+    public ChecksumAlgorithm getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Returns {@link #getMd5Value()} decoded into raw bytes, for the verify methods of
+     * {@link ChecksumAlgorithm}. Empty if the value isn't hex. The array is shared and must not be
+     * modified.
+     */
+    @NonNull
+    public byte[] getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    /**
+     * Returns true if the md5 value rather than the url identifies this image.
+     *
+     * @see Builder#setContentAddressed(boolean)
+     */
+    public boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
+    /**
+     * Returns true if the cache key is the whole url, so models that are equal request the same url.
+     * False for content addressed urls and urls with a {@link CacheKeyPolicy}.
+     */
+    public boolean isKeyedByUrl() {
+        return !contentAddressed && cacheKeyPolicy == CacheKeyPolicy.FULL_URL;
+    }
+
     public URL toURL() throws MalformedURLException {
         return getSafeUrl();
     }
@@ -147,11 +284,23 @@ public class MD5CheckUrl implements Key {
      * <p>This method does not include headers.
      *
      * <p>Unlike {@link #toStringUrl()}} and {@link #toURL()}, this method does not escape input.
+     *
+     * <p>For a content addressed url this is the md5 value, not the url. Otherwise it is the url
+     * with the parts the {@link CacheKeyPolicy} leaves out removed.
      */
     // Public API.
     @SuppressWarnings("WeakerAccess")
     public String getCacheKey() {
-        return stringUrl != null ? stringUrl : Preconditions.checkNotNull(url).toString();
+        String result = cacheKey;
+        if (result == null) {
+            if (contentAddressed) {
+                result = checksumAlgorithm.getName() + ':' + md5Value.toLowerCase(Locale.US);
+            } else {
+                result = cacheKeyPolicy.apply(stringUrl != null ? stringUrl : Preconditions.checkNotNull(url).toString());
+            }
+            cacheKey = result;
+        }
+        return result;
     }
 
     @Override
@@ -175,7 +324,8 @@ public class MD5CheckUrl implements Key {
     public boolean equals(Object o) {
         if (o instanceof MD5CheckUrl) {
             MD5CheckUrl other = (MD5CheckUrl) o;
-            return getCacheKey().equals(other.getCacheKey()) && headers.equals(other.headers);
+            return getCacheKey().equals(other.getCacheKey()) && headers.equals(other.headers)
+                    && checksumAlgorithm == other.checksumAlgorithm;
         }
         return false;
     }
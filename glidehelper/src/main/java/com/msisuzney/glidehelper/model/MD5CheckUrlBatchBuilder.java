@@ -0,0 +1,347 @@
+package com.msisuzney.glidehelper.model;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.util.Preconditions;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+import com.msisuzney.glidehelper.utils.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the {@link MD5CheckUrl}s of a whole list of urls, e.g. a feed page, off the main thread
+ * and in parallel, instead of calling {@link MD5CheckUrl.Builder#build()} for every item while
+ * binding views.
+ *
+ * <p>Unlike {@link MD5CheckUrl.Builder#build()}, urls without a usable md5 value don't silently
+ * turn into String models: the {@link Result} tells which urls fell back and why.
+ *
+ * <pre>
+ *     new MD5CheckUrlBatchBuilder("md5")
+ *             .setCacheKeyPolicy(CacheKeyPolicy.ignoring("t", "sign"))
+ *             .buildAsync(urls, new MD5CheckUrlBatchBuilder.Callback() {
+ *                 public void onBuilt(MD5CheckUrlBatchBuilder.Result result) {
+ *                     adapter.setModels(result);
+ *                 }
+ *             });
+ * </pre>
+ */
+public final class MD5CheckUrlBatchBuilder {
+    /**
+     * Lists shorter than this are built by a single task, splitting them costs more than it saves.
+     */
+    private static final int MIN_CHUNK_SIZE = 32;
+
+    private final String md5ParamKey;
+    private final Executor executor;
+    private final int parallelism;
+    private boolean contentAddressed;
+    private ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+    private CacheKeyPolicy cacheKeyPolicy = CacheKeyPolicy.FULL_URL;
+
+    public MD5CheckUrlBatchBuilder(@NonNull String md5ParamKey) {
+        this(md5ParamKey, Workers.EXECUTOR, Workers.THREAD_COUNT);
+    }
+
+    /**
+     * @param executor    runs the build tasks, e.g. an app wide background executor.
+     * @param parallelism the number of tasks a list is split into at most, usually the number of
+     *                    threads of {@code executor}.
+     */
+    public MD5CheckUrlBatchBuilder(@NonNull String md5ParamKey, @NonNull Executor executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.md5ParamKey = Preconditions.checkNotNull(md5ParamKey);
+        this.executor = Preconditions.checkNotNull(executor);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * See {@link MD5CheckUrl.Builder#setContentAddressed(boolean)}.
+     */
+    public MD5CheckUrlBatchBuilder setContentAddressed(boolean contentAddressed) {
+        this.contentAddressed = contentAddressed;
+        return this;
+    }
+
+    /**
+     * See {@link MD5CheckUrl.Builder#setChecksumAlgorithm(ChecksumAlgorithm)}.
+     */
+    public MD5CheckUrlBatchBuilder setChecksumAlgorithm(@NonNull ChecksumAlgorithm checksumAlgorithm) {
+        this.checksumAlgorithm = Preconditions.checkNotNull(checksumAlgorithm);
+        return this;
+    }
+
+    /**
+     * See {@link MD5CheckUrl.Builder#setCacheKeyPolicy(CacheKeyPolicy)}.
+     */
+    public MD5CheckUrlBatchBuilder setCacheKeyPolicy(@NonNull CacheKeyPolicy cacheKeyPolicy) {
+        this.cacheKeyPolicy = Preconditions.checkNotNull(cacheKeyPolicy);
+        return this;
+    }
+
+    /**
+     * Builds the models of {@code urls} on the caller's thread, for callers that are already on a
+     * background thread.
+     */
+    @NonNull
+    public Result build(@NonNull List<String> urls) {
+        Batch batch = new Batch(snapshot(urls), null);
+        batch.buildRange(0, batch.urls.length);
+        batch.run();
+        try {
+            return batch.get();
+        } catch (InterruptedException | ExecutionException e) {
+            // The result is already set, get() neither waits nor fails.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Starts building the models of {@code urls} on the executor and returns immediately. Later
+     * changes to {@code urls} don't affect the batch.
+     *
+     * @param callback called on the main thread with the result, unless the returned future is
+     *                 cancelled first.
+     */
+    @NonNull
+    public Future<Result> buildAsync(@NonNull List<String> urls, @Nullable Callback callback) {
+        final Batch batch = new Batch(snapshot(urls), callback);
+        int size = batch.urls.length;
+        int chunks = Math.max(1, Math.min(parallelism, size / MIN_CHUNK_SIZE));
+        batch.pendingChunks.set(chunks);
+        int chunkSize = (size + chunks - 1) / chunks;
+        for (int i = 0; i < chunks; i++) {
+            final int start = i * chunkSize;
+            final int end = Math.min(size, start + chunkSize);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!batch.isCancelled()) {
+                        batch.buildRange(start, end);
+                    }
+                    if (batch.pendingChunks.decrementAndGet() == 0) {
+                        // The last chunk publishes the result and notifies the callback.
+                        batch.run();
+                    }
+                }
+            });
+        }
+        return batch;
+    }
+
+    private static String[] snapshot(List<String> urls) {
+        return Preconditions.checkNotNull(urls).toArray(new String[0]);
+    }
+
+    /**
+     * Receives the {@link Result} of {@link #buildAsync(List, Callback)} on the main thread.
+     */
+    public interface Callback {
+        void onBuilt(@NonNull Result result);
+    }
+
+    /**
+     * Why a url was not turned into a {@link MD5CheckUrl}.
+     */
+    public enum FallbackReason {
+        /**
+         * The url is null or not a valid http/https url.
+         */
+        INVALID_URL,
+        /**
+         * The url is valid but has no value for the md5 parameter key.
+         */
+        MISSING_MD5
+    }
+
+    /**
+     * The models of a batch, in the order of the urls.
+     */
+    public static final class Result {
+        private final String[] urls;
+        private final MD5CheckUrl[] models;
+        private final FallbackReason[] fallbackReasons;
+        private final int[] fallbackCounts;
+
+        Result(String[] urls, MD5CheckUrl[] models, FallbackReason[] fallbackReasons) {
+            this.urls = urls;
+            this.models = models;
+            this.fallbackReasons = fallbackReasons;
+            fallbackCounts = new int[FallbackReason.values().length];
+            for (FallbackReason reason : fallbackReasons) {
+                if (reason != null) {
+                    fallbackCounts[reason.ordinal()]++;
+                }
+            }
+        }
+
+        public int size() {
+            return urls.length;
+        }
+
+        /**
+         * Returns the model of the url at {@code index}, or null if it fell back, see
+         * {@link #getFallbackReason(int)}.
+         */
+        @Nullable
+        public MD5CheckUrl get(int index) {
+            return models[index];
+        }
+
+        /**
+         * Returns what {@link MD5CheckUrl.Builder#build()} would have returned for the url at
+         * {@code index}: its {@link MD5CheckUrl} or, if it fell back, the url itself, e.g. for
+         * {@code Glide.with(view).load(result.getModel(position))}.
+         */
+        @Nullable
+        public Object getModel(int index) {
+            MD5CheckUrl model = models[index];
+            return model != null ? model : urls[index];
+        }
+
+        /**
+         * Returns why the url at {@code index} fell back, or null if it has a {@link MD5CheckUrl}.
+         */
+        @Nullable
+        public FallbackReason getFallbackReason(int index) {
+            return fallbackReasons[index];
+        }
+
+        /**
+         * Returns the models that were built, without the urls that fell back.
+         */
+        @NonNull
+        public List<MD5CheckUrl> getMD5CheckUrls() {
+            List<MD5CheckUrl> result = new ArrayList<>(urls.length - getFallbackCount());
+            for (MD5CheckUrl model : models) {
+                if (model != null) {
+                    result.add(model);
+                }
+            }
+            return result;
+        }
+
+        public int getFallbackCount() {
+            int count = 0;
+            for (int reasonCount : fallbackCounts) {
+                count += reasonCount;
+            }
+            return count;
+        }
+
+        public int getFallbackCount(@NonNull FallbackReason reason) {
+            return fallbackCounts[reason.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            return "Result{size=" + urls.length
+                    + ", invalidUrls=" + getFallbackCount(FallbackReason.INVALID_URL)
+                    + ", missingMd5=" + getFallbackCount(FallbackReason.MISSING_MD5) + '}';
+        }
+    }
+
+    /**
+     * Chunks write to disjoint ranges of the arrays, the last one to finish runs this task, which
+     * publishes the {@link Result} to the other threads through {@link FutureTask}.
+     */
+    private final class Batch extends FutureTask<Result> {
+        final String[] urls;
+        final MD5CheckUrl[] models;
+        final FallbackReason[] fallbackReasons;
+        final AtomicInteger pendingChunks = new AtomicInteger();
+        @Nullable
+        private final Callback callback;
+        // Copied so later setter calls don't affect a running batch.
+        private final boolean contentAddressed = MD5CheckUrlBatchBuilder.this.contentAddressed;
+        private final ChecksumAlgorithm checksumAlgorithm = MD5CheckUrlBatchBuilder.this.checksumAlgorithm;
+        private final CacheKeyPolicy cacheKeyPolicy = MD5CheckUrlBatchBuilder.this.cacheKeyPolicy;
+
+        Batch(String[] urls, @Nullable Callback callback) {
+            this(urls, new MD5CheckUrl[urls.length], new FallbackReason[urls.length], callback);
+        }
+
+        private Batch(final String[] urls, final MD5CheckUrl[] models, final FallbackReason[] fallbackReasons,
+                      @Nullable Callback callback) {
+            super(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return new Result(urls, models, fallbackReasons);
+                }
+            });
+            this.urls = urls;
+            this.models = models;
+            this.fallbackReasons = fallbackReasons;
+            this.callback = callback;
+        }
+
+        void buildRange(int start, int end) {
+            for (int i = start; i < end; i++) {
+                String url = urls[i];
+                MD5CheckUrl model = null;
+                if (url != null) {
+                    model = new MD5CheckUrl.Builder(url, md5ParamKey)
+                            .setContentAddressed(contentAddressed)
+                            .setChecksumAlgorithm(checksumAlgorithm)
+                            .setCacheKeyPolicy(cacheKeyPolicy)
+                            .buildOrNull();
+                }
+                if (model != null) {
+                    models[i] = model;
+                } else {
+                    // Only urls that fall back pay for the full parse.
+                    fallbackReasons[i] = url == null || HttpUrl.parse(url) == null
+                            ? FallbackReason.INVALID_URL : FallbackReason.MISSING_MD5;
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            final Result result;
+            try {
+                result = get();
+            } catch (InterruptedException | ExecutionException e) {
+                return;
+            }
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onBuilt(result);
+                }
+            });
+        }
+    }
+
+    private static final class Workers {
+        static final int THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        static final Executor EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "md5-model-builder-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
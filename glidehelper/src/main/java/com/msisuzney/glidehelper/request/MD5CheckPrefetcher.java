@@ -0,0 +1,380 @@
+package com.msisuzney.glidehelper.request;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.msisuzney.glidehelper.LogSwitch;
+import com.msisuzney.glidehelper.diskcache.MD5DiskCacheWrapper;
+import com.msisuzney.glidehelper.diskcache.MD5DiskLruCacheFactory;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Warms the data cache with a batch of {@link MD5CheckUrl}s, e.g. the images of the next screens.
+ *
+ * <p>Urls are deduplicated by md5 value and downloaded with {@link DiskCacheStrategy#DATA} at
+ * {@link Priority#LOW}, at most {@code maxConcurrent} at a time, so the batch doesn't crowd out
+ * the requests for visible images. Urls whose data is already cached and verified are skipped
+ * without a request, see {@link MD5DiskCacheWrapper#isVerified(MD5CheckUrl)}.
+ *
+ * <pre>
+ *     MD5CheckPrefetcher.Batch batch = new MD5CheckPrefetcher(context, 4, diskCacheFactory)
+ *             .prefetch(urls, listener);
+ * </pre>
+ */
+public class MD5CheckPrefetcher {
+    private static final String TAG = "MD5CheckPrefetcher";
+
+    private final Context context;
+    private final int maxConcurrent;
+    @Nullable
+    private final MD5DiskLruCacheFactory diskCacheFactory;
+
+    public MD5CheckPrefetcher(@NonNull Context context, int maxConcurrent) {
+        this(context, maxConcurrent, null);
+    }
+
+    /**
+     * @param diskCacheFactory the factory given to {@link com.bumptech.glide.GlideBuilder#setDiskCache},
+     *                         used to skip urls that are already cached. Without it those urls
+     *                         are still served from the disk cache by Glide, but cost a request.
+     */
+    public MD5CheckPrefetcher(@NonNull Context context, int maxConcurrent,
+                              @Nullable MD5DiskLruCacheFactory diskCacheFactory) {
+        this(maxConcurrent, context.getApplicationContext(), diskCacheFactory);
+    }
+
+    @VisibleForTesting
+    MD5CheckPrefetcher(int maxConcurrent, Context applicationContext,
+                       @Nullable MD5DiskLruCacheFactory diskCacheFactory) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        this.context = applicationContext;
+        this.maxConcurrent = maxConcurrent;
+        this.diskCacheFactory = diskCacheFactory;
+    }
+
+    /**
+     * Starts prefetching {@code urls} and returns immediately. Urls that share an md5 value are
+     * only downloaded once, from the first of them.
+     *
+     * @param listener called on a background thread as urls complete.
+     */
+    @NonNull
+    public Batch prefetch(@NonNull Collection<MD5CheckUrl> urls, @Nullable Listener listener) {
+        Map<String, MD5CheckUrl> unique = new LinkedHashMap<>();
+        for (MD5CheckUrl url : urls) {
+            String md5 = url.getChecksumAlgorithm().getName() + ':' + url.getMd5Value().toLowerCase(Locale.US);
+            if (!unique.containsKey(md5)) {
+                unique.put(md5, url);
+            }
+        }
+        final Batch batch = new Batch(unique.values(), listener);
+        // The cache index may be read from disk, keep that off the caller's thread.
+        Dispatcher.EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                batch.launchNext();
+            }
+        });
+        return batch;
+    }
+
+    /**
+     * Receives the progress of a {@link Batch}.
+     */
+    public interface Listener {
+        /**
+         * Called every time a url completes, including the last one.
+         */
+        void onProgress(@NonNull Progress progress);
+
+        /**
+         * Called once every url has completed, unless the batch was cancelled.
+         */
+        void onComplete(@NonNull Progress progress);
+    }
+
+    /**
+     * A snapshot of the progress of a {@link Batch}.
+     */
+    public static final class Progress {
+        private final int total;
+        private final int downloaded;
+        private final int cached;
+        private final int failed;
+        private final long downloadedBytes;
+
+        Progress(int total, int downloaded, int cached, int failed, long downloadedBytes) {
+            this.total = total;
+            this.downloaded = downloaded;
+            this.cached = cached;
+            this.failed = failed;
+            this.downloadedBytes = downloadedBytes;
+        }
+
+        /**
+         * Returns the number of urls in the batch after deduplication.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the number of urls that were downloaded and verified.
+         */
+        public int getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * Returns the number of urls that were already in the disk cache.
+         */
+        public int getCached() {
+            return cached;
+        }
+
+        /**
+         * Returns the number of urls that failed to load or to verify.
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the size of the downloaded files, including those stored in pack files, see
+         * {@link MD5DiskCacheWrapper#getEntrySize(File)}.
+         */
+        public long getDownloadedBytes() {
+            return downloadedBytes;
+        }
+
+        public int getCompleted() {
+            return downloaded + cached + failed;
+        }
+
+        public boolean isDone() {
+            return getCompleted() == total;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{total=" + total + ", downloaded=" + downloaded + ", cached=" + cached
+                    + ", failed=" + failed + ", downloadedBytes=" + downloadedBytes + '}';
+        }
+    }
+
+    /**
+     * A running prefetch.
+     */
+    public final class Batch {
+        @Nullable
+        private final Listener listener;
+        private final int total;
+        // Guarded by this.
+        private final ArrayDeque<MD5CheckUrl> pending;
+        // Started and not completed yet, including those that are being submitted.
+        private final Set<MD5CheckUrl> inFlight = new HashSet<>();
+        private final Map<MD5CheckUrl, FutureTarget<File>> running = new HashMap<>();
+        private int downloaded;
+        private int cached;
+        private int failed;
+        private long downloadedBytes;
+        private boolean cancelled;
+        private boolean completeNotified;
+
+        Batch(Collection<MD5CheckUrl> urls, @Nullable Listener listener) {
+            this.listener = listener;
+            this.total = urls.size();
+            this.pending = new ArrayDeque<>(urls);
+        }
+
+        @NonNull
+        public synchronized Progress getProgress() {
+            return new Progress(total, downloaded, cached, failed, downloadedBytes);
+        }
+
+        /**
+         * Stops starting new downloads and cancels the running ones.
+         */
+        public void cancel() {
+            List<FutureTarget<File>> toCancel;
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+                toCancel = new ArrayList<>(running.values());
+                running.clear();
+                inFlight.clear();
+            }
+            for (FutureTarget<File> future : toCancel) {
+                future.cancel(true);
+            }
+        }
+
+        void launchNext() {
+            if (total == 0) {
+                if (listener != null) {
+                    listener.onComplete(getProgress());
+                }
+                return;
+            }
+            while (true) {
+                MD5CheckUrl url = nextUrl();
+                if (url == null) {
+                    return;
+                }
+                MD5DiskCacheWrapper diskCache = diskCacheFactory == null ? null : diskCacheFactory.getDiskCache();
+                if (diskCache != null && diskCache.isVerified(url)) {
+                    synchronized (this) {
+                        inFlight.remove(url);
+                        cached++;
+                    }
+                    notifyProgress();
+                    continue;
+                }
+                FutureTarget<File> future = Glide.with(context)
+                        .downloadOnly()
+                        .load(url)
+                        .apply(new MD5CheckRequestOption()
+                                .diskCacheStrategy(DiskCacheStrategy.DATA)
+                                .priority(Priority.LOW))
+                        .listener(new PrefetchListener(url))
+                        .submit();
+                boolean cancel;
+                synchronized (this) {
+                    cancel = cancelled;
+                    // The listener may already have run, e.g. for a memory cache hit.
+                    if (!cancel && inFlight.contains(url)) {
+                        running.put(url, future);
+                    }
+                }
+                if (cancel) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Moves the next pending url in flight, or returns null if none may start now.
+         */
+        @VisibleForTesting
+        @Nullable
+        synchronized MD5CheckUrl nextUrl() {
+            if (cancelled || pending.isEmpty() || inFlight.size() >= maxConcurrent) {
+                return null;
+            }
+            MD5CheckUrl url = pending.poll();
+            inFlight.add(url);
+            return url;
+        }
+
+        @VisibleForTesting
+        void onFinished(MD5CheckUrl url, @Nullable File file, @Nullable DataSource dataSource) {
+            // Outside the lock, a packed entry is looked up in its pack file.
+            long size = file != null && dataSource == DataSource.REMOTE ? MD5DiskCacheWrapper.getEntrySize(file) : 0;
+            synchronized (this) {
+                inFlight.remove(url);
+                running.remove(url);
+                if (file == null) {
+                    failed++;
+                } else if (dataSource == DataSource.REMOTE) {
+                    downloaded++;
+                    downloadedBytes += size;
+                } else {
+                    cached++;
+                }
+            }
+            notifyProgress();
+            launchNext();
+        }
+
+        private void notifyProgress() {
+            Progress progress;
+            boolean complete;
+            synchronized (this) {
+                progress = getProgress();
+                // The last urls may finish on different threads, only one of them completes.
+                complete = progress.isDone() && !completeNotified;
+                if (complete) {
+                    completeNotified = true;
+                }
+            }
+            if (LogSwitch.LOGGING) {
+                Log.d(TAG, progress.toString());
+            }
+            if (listener == null) {
+                return;
+            }
+            listener.onProgress(progress);
+            if (complete) {
+                listener.onComplete(progress);
+            }
+        }
+
+        private final class PrefetchListener implements RequestListener<File> {
+            private final MD5CheckUrl url;
+
+            PrefetchListener(MD5CheckUrl url) {
+                this.url = url;
+            }
+
+            @Override
+            public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<File> target,
+                                        boolean isFirstResource) {
+                if (LogSwitch.LOGGING) {
+                    Log.d(TAG, "prefetch failed:" + url, e);
+                }
+                onFinished(url, null, null);
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(File resource, Object model, Target<File> target,
+                                           DataSource dataSource, boolean isFirstResource) {
+                onFinished(url, resource, dataSource);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Starts batches off the caller's thread, later downloads are started from Glide's callbacks.
+     */
+    private static final class Dispatcher {
+        static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "md5-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
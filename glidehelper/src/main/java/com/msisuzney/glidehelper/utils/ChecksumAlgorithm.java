@@ -0,0 +1,664 @@
+package com.msisuzney.glidehelper.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * The checksum an image is verified with. The expected value is a lowercase hex string, e.g. the
+ * value of the url parameter read by {@link com.msisuzney.glidehelper.model.MD5CheckUrl.Builder}.
+ *
+ * <ul>
+ *     <li>{@link #MD5}, the default.</li>
+ *     <li>{@link #SHA256}, for assets that need real integrity.</li>
+ *     <li>{@link #CRC32} and {@link #XXH64}, much cheaper to compute, they only detect corruption
+ *     and truncation, not tampering.</li>
+ * </ul>
+ *
+ * <p>The verify methods compare against an expected digest decoded once with
+ * {@link #decodeHex(String)}, e.g. {@link com.msisuzney.glidehelper.model.MD5CheckUrl#getExpectedDigest()},
+ * and reuse a hasher and a buffer per thread, so they don't allocate once warmed up. Hashing that
+ * spans several calls, e.g. a stream that is hashed as it is read, takes a pooled hasher with
+ * {@link #acquireHasher()} instead.
+ */
+public abstract class ChecksumAlgorithm {
+    public static final ChecksumAlgorithm MD5 = new MessageDigestAlgorithm("md5", "MD5");
+    public static final ChecksumAlgorithm SHA256 = new MessageDigestAlgorithm("sha256", "SHA-256");
+    public static final ChecksumAlgorithm CRC32 = new Crc32Algorithm();
+    public static final ChecksumAlgorithm XXH64 = new Xxh64Algorithm();
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_DIGEST_LENGTH = 32;
+    private static final int MAX_POOLED_HASHERS = 8;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+    private static final ThreadLocal<byte[]> DIGESTS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[MAX_DIGEST_LENGTH];
+        }
+    };
+
+    private final String name;
+    private final ThreadLocal<Hasher> hashers = new ThreadLocal<Hasher>() {
+        @Override
+        protected Hasher initialValue() {
+            return newHasher();
+        }
+    };
+    // Guarded by itself.
+    private final ArrayDeque<Hasher> pooledHashers = new ArrayDeque<>();
+
+    ChecksumAlgorithm(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Decodes a hex checksum, in either case, or returns null if it isn't valid hex.
+     */
+    @Nullable
+    public static byte[] decodeHex(@NonNull String hex) {
+        int length = hex.length();
+        if (length % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high == -1 || low == -1) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns {@code bytes} as a lowercase hex string.
+     */
+    @NonNull
+    public static String toHexString(@NonNull byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            chars[2 * i] = HEX_DIGITS[b >>> 4];
+            chars[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the algorithm with the given name, e.g. one published by the backend, or null if it
+     * is unknown.
+     */
+    @Nullable
+    public static ChecksumAlgorithm forName(@NonNull String name) {
+        String lowerCase = name.toLowerCase(Locale.US);
+        if (MD5.name.equals(lowerCase)) {
+            return MD5;
+        } else if (SHA256.name.equals(lowerCase) || "sha-256".equals(lowerCase)) {
+            return SHA256;
+        } else if (CRC32.name.equals(lowerCase)) {
+            return CRC32;
+        } else if (XXH64.name.equals(lowerCase)) {
+            return XXH64;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the lowercase name, e.g. "md5".
+     */
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    public abstract Hasher newHasher();
+
+    /**
+     * Returns a reset hasher from the pool, or a new one if the pool is empty. Unlike the hasher
+     * the verify methods reuse per thread, it may be kept across calls and threads. Hand it back
+     * with {@link #releaseHasher(Hasher)} once it is no longer used.
+     */
+    @NonNull
+    public Hasher acquireHasher() {
+        Hasher hasher;
+        synchronized (pooledHashers) {
+            hasher = pooledHashers.poll();
+        }
+        if (hasher == null) {
+            return newHasher();
+        }
+        hasher.reset();
+        return hasher;
+    }
+
+    /**
+     * Returns a hasher of this algorithm, taken with {@link #acquireHasher()}, to the pool.
+     */
+    public void releaseHasher(@NonNull Hasher hasher) {
+        synchronized (pooledHashers) {
+            if (pooledHashers.size() < MAX_POOLED_HASHERS) {
+                pooledHashers.push(hasher);
+            }
+        }
+    }
+
+    /**
+     * Returns the checksum of {@code in} read to the end, {@code in} isn't closed.
+     */
+    @NonNull
+    public String hash(@NonNull InputStream in) throws IOException {
+        Hasher hasher = obtainHasher();
+        update(hasher, in, null);
+        return hasher.digestHex();
+    }
+
+    @NonNull
+    public String hash(@NonNull File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return hash(in);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Copies {@code in} to {@code out} and returns the checksum of the copied bytes, so the body
+     * only has to be read once. Neither stream is closed.
+     */
+    @NonNull
+    public String copyAndHash(@NonNull InputStream in, @NonNull OutputStream out) throws IOException {
+        Hasher hasher = obtainHasher();
+        update(hasher, in, out);
+        return hasher.digestHex();
+    }
+
+    /**
+     * Returns true if {@code in}, read to the end, matches {@code expected}. {@code in} isn't
+     * closed.
+     */
+    public boolean verify(@NonNull InputStream in, @NonNull byte[] expected) throws IOException {
+        Hasher hasher = obtainHasher();
+        update(hasher, in, null);
+        return matches(hasher, expected);
+    }
+
+    public boolean verify(@NonNull File file, @NonNull byte[] expected) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return verify(in, expected);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Returns true if the remaining bytes of {@code buffer} match {@code expected}. The position
+     * of {@code buffer} isn't changed.
+     */
+    public boolean verify(@NonNull ByteBuffer buffer, @NonNull byte[] expected) {
+        Hasher hasher = obtainHasher();
+        hasher.update(buffer.duplicate());
+        return matches(hasher, expected);
+    }
+
+    /**
+     * Copies {@code in} to {@code out} and returns true if the copied bytes match
+     * {@code expected}. Neither stream is closed.
+     */
+    public boolean copyAndVerify(@NonNull InputStream in, @NonNull OutputStream out, @NonNull byte[] expected)
+            throws IOException {
+        Hasher hasher = obtainHasher();
+        update(hasher, in, out);
+        return matches(hasher, expected);
+    }
+
+    /**
+     * Finishes {@code hasher}, which must be of this algorithm, and returns true if its checksum
+     * is {@code expected}.
+     */
+    public boolean matches(@NonNull Hasher hasher, @NonNull byte[] expected) {
+        byte[] digest = DIGESTS.get();
+        int length = hasher.digestInto(digest);
+        if (length != expected.length) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < length; i++) {
+            diff |= digest[i] ^ expected[i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Returns this thread's hasher, reset. Only for work that finishes before the thread hashes
+     * anything else with this algorithm.
+     */
+    private Hasher obtainHasher() {
+        Hasher hasher = hashers.get();
+        hasher.reset();
+        return hasher;
+    }
+
+    private static void update(Hasher hasher, InputStream in, @Nullable OutputStream out) throws IOException {
+        byte[] bytes = BUFFERS.get();
+        int byteCount;
+        while ((byteCount = in.read(bytes)) != -1) {
+            hasher.update(bytes, 0, byteCount);
+            if (out != null) {
+                out.write(bytes, 0, byteCount);
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Computes a checksum incrementally, not thread safe.
+     */
+    public abstract static class Hasher {
+        public abstract void update(byte[] b, int off, int len);
+
+        public abstract void update(byte b);
+
+        /**
+         * Hashes the remaining bytes of {@code buffer} and moves its position to the limit.
+         */
+        public void update(@NonNull ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                return;
+            }
+            byte[] bytes = BUFFERS.get();
+            while (buffer.hasRemaining()) {
+                int length = Math.min(bytes.length, buffer.remaining());
+                buffer.get(bytes, 0, length);
+                update(bytes, 0, length);
+            }
+        }
+
+        public abstract int getDigestLength();
+
+        /**
+         * Writes the checksum of the bytes so far to the start of {@code out}, resets the hasher
+         * and returns the number of bytes written.
+         */
+        public abstract int digestInto(@NonNull byte[] out);
+
+        public abstract void reset();
+
+        /**
+         * Returns the checksum of the bytes so far and resets the hasher.
+         */
+        @NonNull
+        public byte[] digest() {
+            byte[] digest = new byte[getDigestLength()];
+            digestInto(digest);
+            return digest;
+        }
+
+        /**
+         * Returns {@link #digest()} as a lowercase hex string.
+         */
+        @NonNull
+        public String digestHex() {
+            return toHexString(digest());
+        }
+    }
+
+    private static final class MessageDigestAlgorithm extends ChecksumAlgorithm {
+        private final String jcaName;
+
+        MessageDigestAlgorithm(String name, String jcaName) {
+            super(name);
+            this.jcaName = jcaName;
+        }
+
+        @NonNull
+        @Override
+        public Hasher newHasher() {
+            final MessageDigest digester;
+            try {
+                digester = MessageDigest.getInstance(jcaName);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Hasher() {
+                @Override
+                public void update(byte[] b, int off, int len) {
+                    digester.update(b, off, len);
+                }
+
+                @Override
+                public void update(byte b) {
+                    digester.update(b);
+                }
+
+                @Override
+                public void update(@NonNull ByteBuffer buffer) {
+                    digester.update(buffer);
+                }
+
+                @Override
+                public int getDigestLength() {
+                    return digester.getDigestLength();
+                }
+
+                @Override
+                public int digestInto(@NonNull byte[] out) {
+                    try {
+                        return digester.digest(out, 0, digester.getDigestLength());
+                    } catch (DigestException e) {
+                        throw new IllegalArgumentException(e);
+                    }
+                }
+
+                @Override
+                public void reset() {
+                    digester.reset();
+                }
+            };
+        }
+    }
+
+    /**
+     * CRC-32 as used by zip and PNG, computed natively by zlib.
+     */
+    private static final class Crc32Algorithm extends ChecksumAlgorithm {
+
+        Crc32Algorithm() {
+            super("crc32");
+        }
+
+        @NonNull
+        @Override
+        public Hasher newHasher() {
+            final CRC32 crc = new CRC32();
+            return new Hasher() {
+                @Override
+                public void update(byte[] b, int off, int len) {
+                    crc.update(b, off, len);
+                }
+
+                @Override
+                public void update(byte b) {
+                    crc.update(b);
+                }
+
+                @Override
+                public int getDigestLength() {
+                    return 4;
+                }
+
+                @Override
+                public int digestInto(@NonNull byte[] out) {
+                    long value = crc.getValue();
+                    crc.reset();
+                    out[0] = (byte) (value >>> 24);
+                    out[1] = (byte) (value >>> 16);
+                    out[2] = (byte) (value >>> 8);
+                    out[3] = (byte) value;
+                    return 4;
+                }
+
+                @Override
+                public void reset() {
+                    crc.reset();
+                }
+            };
+        }
+    }
+
+    /**
+     * XXH64 with seed 0, the digest is the hash in big endian order like {@code xxhsum} prints it.
+     */
+    private static final class Xxh64Algorithm extends ChecksumAlgorithm {
+
+        Xxh64Algorithm() {
+            super("xxh64");
+        }
+
+        @NonNull
+        @Override
+        public Hasher newHasher() {
+            return new Xxh64Hasher();
+        }
+    }
+
+    private static final class Xxh64Hasher extends Hasher {
+        private static final long PRIME1 = 0x9E3779B185EBCA87L;
+        private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long PRIME3 = 0x165667B19E3779F9L;
+        private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+        private static final long PRIME5 = 0x27D4EB2F165667C5L;
+        private static final int STRIPE = 32;
+
+        private final byte[] buffer = new byte[STRIPE];
+        private int bufferSize;
+        private long totalLength;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+
+        Xxh64Hasher() {
+            reset();
+        }
+
+        @Override
+        public void reset() {
+            v1 = PRIME1 + PRIME2;
+            v2 = PRIME2;
+            v3 = 0;
+            v4 = -PRIME1;
+            bufferSize = 0;
+            totalLength = 0;
+        }
+
+        @Override
+        public void update(byte b) {
+            buffer[bufferSize++] = b;
+            totalLength++;
+            if (bufferSize == STRIPE) {
+                processStripe(buffer, 0);
+                bufferSize = 0;
+            }
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            totalLength += len;
+            if (bufferSize + len < STRIPE) {
+                System.arraycopy(b, off, buffer, bufferSize, len);
+                bufferSize += len;
+                return;
+            }
+            if (bufferSize > 0) {
+                int fill = STRIPE - bufferSize;
+                System.arraycopy(b, off, buffer, bufferSize, fill);
+                processStripe(buffer, 0);
+                off += fill;
+                len -= fill;
+                bufferSize = 0;
+            }
+            int end = off + len;
+            // Locals keep the accumulators in registers.
+            long v1 = this.v1;
+            long v2 = this.v2;
+            long v3 = this.v3;
+            long v4 = this.v4;
+            while (end - off >= STRIPE) {
+                v1 = round(v1, readLong(b, off));
+                v2 = round(v2, readLong(b, off + 8));
+                v3 = round(v3, readLong(b, off + 16));
+                v4 = round(v4, readLong(b, off + 24));
+                off += STRIPE;
+            }
+            this.v1 = v1;
+            this.v2 = v2;
+            this.v3 = v3;
+            this.v4 = v4;
+            bufferSize = end - off;
+            System.arraycopy(b, off, buffer, 0, bufferSize);
+        }
+
+        @Override
+        public void update(@NonNull ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                super.update(buffer);
+                return;
+            }
+            // Fill the pending stripe byte by byte, then read whole stripes straight from the
+            // buffer, e.g. a mapped file, without copying them.
+            while (bufferSize != 0 && buffer.hasRemaining()) {
+                update(buffer.get());
+            }
+            if (bufferSize != 0) {
+                // Too short to fill the pending stripe, its bytes are all buffered now.
+                return;
+            }
+            ByteOrder order = buffer.order();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long v1 = this.v1;
+            long v2 = this.v2;
+            long v3 = this.v3;
+            long v4 = this.v4;
+            int stripes = buffer.remaining() / STRIPE;
+            for (int i = 0; i < stripes; i++) {
+                v1 = round(v1, buffer.getLong());
+                v2 = round(v2, buffer.getLong());
+                v3 = round(v3, buffer.getLong());
+                v4 = round(v4, buffer.getLong());
+            }
+            this.v1 = v1;
+            this.v2 = v2;
+            this.v3 = v3;
+            this.v4 = v4;
+            totalLength += (long) stripes * STRIPE;
+            buffer.order(order);
+            int tail = buffer.remaining();
+            buffer.get(this.buffer, bufferSize, tail);
+            bufferSize += tail;
+            totalLength += tail;
+        }
+
+        @Override
+        public int getDigestLength() {
+            return 8;
+        }
+
+        @Override
+        public int digestInto(@NonNull byte[] out) {
+            long h;
+            if (totalLength >= STRIPE) {
+                h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                h = mergeRound(h, v1);
+                h = mergeRound(h, v2);
+                h = mergeRound(h, v3);
+                h = mergeRound(h, v4);
+            } else {
+                h = PRIME5;
+            }
+            h += totalLength;
+
+            int i = 0;
+            for (; i + 8 <= bufferSize; i += 8) {
+                h ^= round(0, readLong(buffer, i));
+                h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+            }
+            if (i + 4 <= bufferSize) {
+                h ^= (readInt(buffer, i) & 0xFFFFFFFFL) * PRIME1;
+                h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+                i += 4;
+            }
+            for (; i < bufferSize; i++) {
+                h ^= (buffer[i] & 0xFF) * PRIME5;
+                h = Long.rotateLeft(h, 11) * PRIME1;
+            }
+
+            h ^= h >>> 33;
+            h *= PRIME2;
+            h ^= h >>> 29;
+            h *= PRIME3;
+            h ^= h >>> 32;
+            reset();
+
+            for (int j = 7; j >= 0; j--) {
+                out[j] = (byte) h;
+                h >>>= 8;
+            }
+            return 8;
+        }
+
+        private void processStripe(byte[] b, int off) {
+            v1 = round(v1, readLong(b, off));
+            v2 = round(v2, readLong(b, off + 8));
+            v3 = round(v3, readLong(b, off + 16));
+            v4 = round(v4, readLong(b, off + 24));
+        }
+
+        private static long round(long acc, long input) {
+            acc += input * PRIME2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * PRIME1;
+        }
+
+        private static long mergeRound(long acc, long val) {
+            acc ^= round(0, val);
+            return acc * PRIME1 + PRIME4;
+        }
+
+        private static long readLong(byte[] b, int off) {
+            return (b[off] & 0xFFL)
+                    | (b[off + 1] & 0xFFL) << 8
+                    | (b[off + 2] & 0xFFL) << 16
+                    | (b[off + 3] & 0xFFL) << 24
+                    | (b[off + 4] & 0xFFL) << 32
+                    | (b[off + 5] & 0xFFL) << 40
+                    | (b[off + 6] & 0xFFL) << 48
+                    | (b[off + 7] & 0xFFL) << 56;
+        }
+
+        private static int readInt(byte[] b, int off) {
+            return (b[off] & 0xFF)
+                    | (b[off + 1] & 0xFF) << 8
+                    | (b[off + 2] & 0xFF) << 16
+                    | (b[off + 3] & 0xFF) << 24;
+        }
+    }
+}
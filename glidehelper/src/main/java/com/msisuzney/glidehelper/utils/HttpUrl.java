@@ -328,18 +328,23 @@ public final class HttpUrl {
     final int port;
 
     /**
-     * A list of canonical path segments. This list always contains at least one element, which may be
-     * the empty string. Each segment is formatted with a leading '/', so if path segments were ["a",
-     * "b", ""], then the encoded path would be "/a/b/".
+     * A list of decoded path segments, built from {@link #url} on first use. This list always
+     * contains at least one element, which may be the empty string.
      */
-    private final List<String> pathSegments;
+    private volatile @Nullable
+    List<String> pathSegments;
 
     /**
-     * Alternating, decoded query names and values, or null for no query. Names may be empty or
-     * non-empty, but never null. Values are null if the name has no corresponding '=' separator, or
-     * empty, or non-empty.
+     * True if the URL has a query, even an empty one.
      */
-    private final @Nullable
+    private final boolean hasQuery;
+
+    /**
+     * Alternating, decoded query names and values, built from {@link #url} on first use. Names may be
+     * empty or non-empty, but never null. Values are null if the name has no corresponding '='
+     * separator, or empty, or non-empty. {@link #queryParameter(String)} doesn't need it.
+     */
+    private volatile @Nullable
     List<String> queryNamesAndValues;
 
     /**
@@ -359,10 +364,7 @@ public final class HttpUrl {
         this.password = percentDecode(builder.encodedPassword, false);
         this.host = builder.host;
         this.port = builder.effectivePort();
-        this.pathSegments = percentDecode(builder.encodedPathSegments, false);
-        this.queryNamesAndValues = builder.encodedQueryNamesAndValues != null
-                ? percentDecode(builder.encodedQueryNamesAndValues, true)
-                : null;
+        this.hasQuery = builder.encodedQuery != null || builder.encodedQueryNamesAndValues != null;
         this.fragment = builder.encodedFragment != null
                 ? percentDecode(builder.encodedFragment, false)
                 : null;
@@ -550,7 +552,13 @@ public final class HttpUrl {
      * </table>
      */
     public int pathSize() {
-        return pathSegments.size();
+        int pathStart = url.indexOf('/', scheme.length() + 3); // "://".length() == 3.
+        int pathEnd = delimiterOffset(url, pathStart, url.length(), "?#");
+        int size = 0;
+        for (int i = pathStart; i < pathEnd; i++) {
+            if (url.charAt(i) == '/') size++;
+        }
+        return size;
     }
 
     /**
@@ -613,7 +621,12 @@ public final class HttpUrl {
      * </table>
      */
     public List<String> pathSegments() {
-        return pathSegments;
+        List<String> result = pathSegments;
+        if (result == null) {
+            result = percentDecode(encodedPathSegments(), false);
+            pathSegments = result;
+        }
+        return result;
     }
 
     /**
@@ -633,12 +646,27 @@ public final class HttpUrl {
      */
     public @Nullable
     String encodedQuery() {
-        if (queryNamesAndValues == null) return null; // No query.
+        if (!hasQuery) return null; // No query.
         int queryStart = url.indexOf('?') + 1;
         int queryEnd = delimiterOffset(url, queryStart, url.length(), '#');
         return url.substring(queryStart, queryEnd);
     }
 
+    /**
+     * Returns the decoded query names and values, or null for no query. Split from {@link #url} the
+     * first time a caller needs more than {@link #queryParameter(String)}.
+     */
+    private @Nullable
+    List<String> queryNamesAndValues() {
+        if (!hasQuery) return null;
+        List<String> result = queryNamesAndValues;
+        if (result == null) {
+            result = percentDecode(queryStringToNamesAndValues(encodedQuery()), true);
+            queryNamesAndValues = result;
+        }
+        return result;
+    }
+
     static void namesAndValuesToQueryString(StringBuilder out, List<String> namesAndValues) {
         for (int i = 0, size = namesAndValues.size(); i < size; i += 2) {
             String name = namesAndValues.get(i);
@@ -694,6 +722,7 @@ public final class HttpUrl {
      */
     public @Nullable
     String query() {
+        List<String> queryNamesAndValues = queryNamesAndValues();
         if (queryNamesAndValues == null) return null; // No query.
         StringBuilder result = new StringBuilder();
         namesAndValuesToQueryString(result, queryNamesAndValues);
@@ -715,7 +744,14 @@ public final class HttpUrl {
      * </table>
      */
     public int querySize() {
-        return queryNamesAndValues != null ? queryNamesAndValues.size() / 2 : 0;
+        if (!hasQuery) return 0;
+        int queryStart = url.indexOf('?') + 1;
+        int queryEnd = delimiterOffset(url, queryStart, url.length(), '#');
+        int size = 1;
+        for (int i = queryStart; i < queryEnd; i++) {
+            if (url.charAt(i) == '&') size++;
+        }
+        return size;
     }
 
     /**
@@ -733,15 +769,45 @@ public final class HttpUrl {
      */
     public @Nullable
     String queryParameter(String name) {
-        if (queryNamesAndValues == null) return null;
-        for (int i = 0, size = queryNamesAndValues.size(); i < size; i += 2) {
-            if (name.equals(queryNamesAndValues.get(i))) {
-                return queryNamesAndValues.get(i + 1);
+        if (!hasQuery) return null;
+        int queryStart = url.indexOf('?') + 1;
+        int queryEnd = delimiterOffset(url, queryStart, url.length(), '#');
+        return queryParameter(url, queryStart, queryEnd, name);
+    }
+
+    /**
+     * Returns the first decoded value of {@code name} in the encoded query {@code [pos..limit)} of
+     * {@code input}, without splitting the query up. Only the name that matches and its value are
+     * decoded, and only if they contain escapes.
+     */
+    static @Nullable
+    String queryParameter(String input, int pos, int limit, String name) {
+        while (pos <= limit) {
+            int ampersandOffset = delimiterOffset(input, pos, limit, '&');
+            int equalsOffset = delimiterOffset(input, pos, ampersandOffset, '=');
+            if (encodedRegionEquals(input, pos, equalsOffset, name)) {
+                // A name without '=' has no value.
+                return equalsOffset == ampersandOffset
+                        ? null : percentDecode(input, equalsOffset + 1, ampersandOffset, true);
             }
+            pos = ampersandOffset + 1;
         }
         return null;
     }
 
+    /**
+     * Returns true if {@code [pos..limit)} of {@code input} decodes to {@code decoded}.
+     */
+    private static boolean encodedRegionEquals(String input, int pos, int limit, String decoded) {
+        for (int i = pos; i < limit; i++) {
+            char c = input.charAt(i);
+            if (c == '%' || c == '+') {
+                return percentDecode(input, pos, limit, true).equals(decoded);
+            }
+        }
+        return limit - pos == decoded.length() && input.regionMatches(pos, decoded, 0, decoded.length());
+    }
+
     /**
      * Returns the distinct query parameter names in this URL, like {@code ["a", "b"]} for {@code
      * http://host/?a=apple&b=banana}. If this URL has no query this returns the empty set.
@@ -756,6 +822,7 @@ public final class HttpUrl {
      * </table>
      */
     public Set<String> queryParameterNames() {
+        List<String> queryNamesAndValues = queryNamesAndValues();
         if (queryNamesAndValues == null) return Collections.emptySet();
         Set<String> result = new LinkedHashSet<>();
         for (int i = 0, size = queryNamesAndValues.size(); i < size; i += 2) {
@@ -783,6 +850,7 @@ public final class HttpUrl {
      * </table>
      */
     public List<String> queryParameterValues(String name) {
+        List<String> queryNamesAndValues = queryNamesAndValues();
         if (queryNamesAndValues == null) return Collections.emptyList();
         List<String> result = new ArrayList<>();
         for (int i = 0, size = queryNamesAndValues.size(); i < size; i += 2) {
@@ -811,6 +879,7 @@ public final class HttpUrl {
      * </table>
      */
     public String queryParameterName(int index) {
+        List<String> queryNamesAndValues = queryNamesAndValues();
         if (queryNamesAndValues == null) throw new IndexOutOfBoundsException();
         return queryNamesAndValues.get(index * 2);
     }
@@ -833,6 +902,7 @@ public final class HttpUrl {
      * </table>
      */
     public String queryParameterValue(int index) {
+        List<String> queryNamesAndValues = queryNamesAndValues();
         if (queryNamesAndValues == null) throw new IndexOutOfBoundsException();
         return queryNamesAndValues.get(index * 2 + 1);
     }
@@ -1009,6 +1079,13 @@ public final class HttpUrl {
         String host;
         int port = -1;
         final List<String> encodedPathSegments = new ArrayList<>();
+        /**
+         * The canonical query as it was set or parsed, or null. Split into
+         * {@link #encodedQueryNamesAndValues} only once single parameters are changed, most urls are
+         * parsed and built without that. At most one of the two is non-null.
+         */
+        @Nullable
+        String encodedQuery;
         @Nullable
         List<String> encodedQueryNamesAndValues;
         @Nullable
@@ -1170,26 +1247,37 @@ public final class HttpUrl {
         }
 
         public Builder query(@Nullable String query) {
-            this.encodedQueryNamesAndValues = query != null
-                    ? queryStringToNamesAndValues(canonicalize(
-                    query, QUERY_ENCODE_SET, false, false, true, true))
+            this.encodedQuery = query != null
+                    ? canonicalize(query, QUERY_ENCODE_SET, false, false, true, true)
                     : null;
+            this.encodedQueryNamesAndValues = null;
             return this;
         }
 
         public Builder encodedQuery(@Nullable String encodedQuery) {
-            this.encodedQueryNamesAndValues = encodedQuery != null
-                    ? queryStringToNamesAndValues(
-                    canonicalize(encodedQuery, QUERY_ENCODE_SET, true, false, true, true))
+            this.encodedQuery = encodedQuery != null
+                    ? canonicalize(encodedQuery, QUERY_ENCODE_SET, true, false, true, true)
                     : null;
+            this.encodedQueryNamesAndValues = null;
             return this;
         }
 
+        /**
+         * Splits a query that was set or parsed as a whole, before single parameters are changed.
+         */
+        private void splitQuery() {
+            if (encodedQuery != null) {
+                encodedQueryNamesAndValues = queryStringToNamesAndValues(encodedQuery);
+                encodedQuery = null;
+            }
+        }
+
         /**
          * Encodes the query parameter using UTF-8 and adds it to this URL's query string.
          */
         public Builder addQueryParameter(String name, @Nullable String value) {
             if (name == null) throw new NullPointerException("name == null");
+            splitQuery();
             if (encodedQueryNamesAndValues == null) encodedQueryNamesAndValues = new ArrayList<>();
             encodedQueryNamesAndValues.add(
                     canonicalize(name, QUERY_COMPONENT_ENCODE_SET, false, false, true, true));
@@ -1204,6 +1292,7 @@ public final class HttpUrl {
          */
         public Builder addEncodedQueryParameter(String encodedName, @Nullable String encodedValue) {
             if (encodedName == null) throw new NullPointerException("encodedName == null");
+            splitQuery();
             if (encodedQueryNamesAndValues == null) encodedQueryNamesAndValues = new ArrayList<>();
             encodedQueryNamesAndValues.add(
                     canonicalize(encodedName, QUERY_COMPONENT_REENCODE_SET, true, false, true, true));
@@ -1227,6 +1316,7 @@ public final class HttpUrl {
 
         public Builder removeAllQueryParameters(String name) {
             if (name == null) throw new NullPointerException("name == null");
+            splitQuery();
             if (encodedQueryNamesAndValues == null) return this;
             String nameToRemove = canonicalize(
                     name, QUERY_COMPONENT_ENCODE_SET, false, false, true, true);
@@ -1236,6 +1326,7 @@ public final class HttpUrl {
 
         public Builder removeAllEncodedQueryParameters(String encodedName) {
             if (encodedName == null) throw new NullPointerException("encodedName == null");
+            splitQuery();
             if (encodedQueryNamesAndValues == null) return this;
             removeAllCanonicalQueryParameters(
                     canonicalize(encodedName, QUERY_COMPONENT_REENCODE_SET, true, false, true, true));
@@ -1279,6 +1370,7 @@ public final class HttpUrl {
                 encodedPathSegments.set(i,
                         canonicalize(pathSegment, PATH_SEGMENT_ENCODE_SET_URI, true, true, false, true));
             }
+            splitQuery();
             if (encodedQueryNamesAndValues != null) {
                 for (int i = 0, size = encodedQueryNamesAndValues.size(); i < size; i++) {
                     String component = encodedQueryNamesAndValues.get(i);
@@ -1341,7 +1433,10 @@ public final class HttpUrl {
 
             pathSegmentsToString(result, encodedPathSegments);
 
-            if (encodedQueryNamesAndValues != null) {
+            if (encodedQuery != null) {
+                result.append('?');
+                result.append(encodedQuery);
+            } else if (encodedQueryNamesAndValues != null) {
                 result.append('?');
                 namesAndValuesToQueryString(result, encodedQueryNamesAndValues);
             }
@@ -1475,8 +1570,9 @@ public final class HttpUrl {
             // Query.
             if (pos < limit && input.charAt(pos) == '?') {
                 int queryDelimiterOffset = delimiterOffset(input, pos, limit, '#');
-                this.encodedQueryNamesAndValues = queryStringToNamesAndValues(canonicalize(
-                        input, pos + 1, queryDelimiterOffset, QUERY_ENCODE_SET, true, false, true, true, null));
+                this.encodedQuery = canonicalize(
+                        input, pos + 1, queryDelimiterOffset, QUERY_ENCODE_SET, true, false, true, true, null);
+                this.encodedQueryNamesAndValues = null;
                 pos = queryDelimiterOffset;
             }
 
@@ -1899,6 +1995,9 @@ public final class HttpUrl {
             throw new AssertionError("Invalid IPv6 address: '" + host + "'");
         }
 
+        // Most hosts are plain lowercase ASCII already, IDN wouldn't change them.
+        if (isCanonicalAsciiHost(host)) return host;
+
         try {
             String result = IDN.toASCII(host).toLowerCase(Locale.US);
             if (result.isEmpty()) return null;
@@ -1914,6 +2013,26 @@ public final class HttpUrl {
         }
     }
 
+    /**
+     * Returns true if {@code host} is made of lowercase letters, digits and '-' in dot separated
+     * labels of 1 to 63 characters, which is what {@link IDN#toASCII(String)} returns it as.
+     */
+    private static boolean isCanonicalAsciiHost(String host) {
+        int labelLength = 0;
+        for (int i = 0, length = host.length(); i < length; i++) {
+            char c = host.charAt(i);
+            if (c == '.') {
+                if (labelLength == 0) return false;
+                labelLength = 0;
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-') {
+                if (++labelLength > 63) return false;
+            } else {
+                return false;
+            }
+        }
+        return labelLength > 0;
+    }
+
     private static boolean containsInvalidHostnameAsciiCodes(String hostnameAscii) {
         for (int i = 0; i < hostnameAscii.length(); i++) {
             char c = hostnameAscii.charAt(i);
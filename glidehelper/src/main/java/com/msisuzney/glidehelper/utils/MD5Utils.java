@@ -5,7 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
+import java.io.OutputStream;
 
 public class MD5Utils {
 
@@ -30,30 +30,7 @@ public class MD5Utils {
 
     public static String encode(InputStream in) {
         try {
-            MessageDigest digester = MessageDigest.getInstance("MD5");
-            byte[] bytes = new byte[8192];
-            int byteCount;
-            while ((byteCount = in.read(bytes)) > 0) {
-                digester.update(bytes, 0, byteCount);
-            }
-            byte[] digest = digester.digest();
-
-            // byte -128 ---- 127
-            StringBuffer sb = new StringBuffer();
-            for (byte b : digest) {
-                int a = b & 0xff;
-                // Log.d(TAG, "" + a);
-
-                String hex = Integer.toHexString(a);
-
-                if (hex.length() == 1) {
-                    hex = 0 + hex;
-                }
-
-                sb.append(hex);
-            }
-
-            return sb.toString();
+            return ChecksumAlgorithm.MD5.hash(in);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -68,4 +45,16 @@ public class MD5Utils {
         }
         return null;
     }
+
+    /**
+     * Copies {@code in} to {@code out} and returns the md5 of the copied bytes, so the body only has
+     * to be read once. Neither stream is closed.
+     */
+    public static String copyAndEncode(InputStream in, OutputStream out) throws IOException {
+        return ChecksumAlgorithm.MD5.copyAndHash(in, out);
+    }
+
+    public static String toHexString(byte[] digest) {
+        return ChecksumAlgorithm.toHexString(digest);
+    }
 }
@@ -0,0 +1,120 @@
+package com.msisuzney.glidehelper.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Reads a query parameter straight from a url string in one pass, without building a
+ * {@link HttpUrl}, which canonicalizes the host, every path segment and every parameter first.
+ *
+ * <p>Plain http/https urls with a simple host are scanned directly. Anything else, e.g. urls with
+ * whitespace, backslashes, user info, IPv6 hosts or non-ASCII characters, is handed to
+ * {@link HttpUrl#parse(String)}, so the result is always the one {@link HttpUrl#queryParameter(String)}
+ * would give.
+ */
+public final class UrlQuery {
+    private static final String HTTP_PREFIX = "http://";
+    private static final String HTTPS_PREFIX = "https://";
+    private static final int MAX_PORT = 65535;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private UrlQuery() {
+    }
+
+    /**
+     * Returns the decoded value of the first query parameter called {@code name}, or null if
+     * {@code url} isn't a valid http/https url, has no such parameter or the parameter has no
+     * value.
+     */
+    @Nullable
+    public static String queryParameter(@NonNull String url, @NonNull String name) {
+        int hostStart;
+        if (url.regionMatches(true, 0, HTTPS_PREFIX, 0, HTTPS_PREFIX.length())) {
+            hostStart = HTTPS_PREFIX.length();
+        } else if (url.regionMatches(true, 0, HTTP_PREFIX, 0, HTTP_PREFIX.length())) {
+            hostStart = HTTP_PREFIX.length();
+        } else {
+            return parseAndGet(url, name);
+        }
+
+        int limit = url.length();
+        int hostEnd = -1;
+        int portColon = -1;
+        int labelLength = 0;
+        int queryStart = -1;
+        for (int i = hostStart; i < limit; i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c >= '\u007f' || c == '\\') {
+                return parseAndGet(url, name);
+            }
+            if (hostEnd == -1) {
+                if (c == '/' || c == '?' || c == '#') {
+                    hostEnd = i;
+                } else if (c == ':' && portColon == -1) {
+                    portColon = i;
+                    continue;
+                } else if (portColon != -1) {
+                    continue;
+                } else if (c == '.' && labelLength > 0) {
+                    labelLength = 0;
+                    continue;
+                } else if (isHostChar(c) && ++labelLength <= MAX_LABEL_LENGTH) {
+                    continue;
+                } else {
+                    // Other characters, empty or long labels are left to HttpUrl.
+                    return parseAndGet(url, name);
+                }
+            }
+            if (c == '#') {
+                limit = i;
+                break;
+            }
+            if (c == '?' && queryStart == -1) {
+                queryStart = i + 1;
+            }
+        }
+        if (hostEnd == -1) {
+            hostEnd = limit;
+        }
+        int portStart = portColon != -1 ? portColon : hostEnd;
+        if (portStart == hostStart || !isValidPort(url, portColon, hostEnd)) {
+            return parseAndGet(url, name);
+        }
+        if (queryStart == -1) {
+            return null;
+        }
+        return HttpUrl.queryParameter(url, queryStart, limit, name);
+    }
+
+    @Nullable
+    private static String parseAndGet(String url, String name) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        return httpUrl != null ? httpUrl.queryParameter(name) : null;
+    }
+
+    private static boolean isHostChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-';
+    }
+
+    private static boolean isValidPort(String url, int portColon, int hostEnd) {
+        if (portColon == -1) {
+            return true;
+        }
+        // An empty port is the default one.
+        if (portColon + 1 == hostEnd) {
+            return true;
+        }
+        if (hostEnd - portColon > 6) {
+            return false;
+        }
+        int port = 0;
+        for (int i = portColon + 1; i < hostEnd; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port > 0 && port <= MAX_PORT;
+    }
+}
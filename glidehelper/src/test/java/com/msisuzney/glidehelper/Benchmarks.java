@@ -0,0 +1,44 @@
+package com.msisuzney.glidehelper;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Benchmarks are test classes named {@code *Benchmark} that are skipped unless asked for:
+ * <pre>
+ * ./gradlew :glidehelper:testDebugUnitTest -Pbenchmark=true --tests '*Benchmark'
+ * </pre>
+ * They run on the desktop JVM and print their numbers instead of asserting on them. The numbers
+ * compare approaches on the same machine, they don't predict timings on a device.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Skips the calling benchmark unless benchmarks were asked for.
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue("run with -Pbenchmark=true", Boolean.getBoolean("glidehelper.benchmark"));
+    }
+
+    /**
+     * Returns the bytes the calling thread has allocated so far, or -1 if the JVM doesn't count
+     * them.
+     */
+    public static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static void report(String benchmark, String format, Object... args) {
+        System.out.println("[" + benchmark + "] " + String.format(Locale.US, format, args));
+    }
+}
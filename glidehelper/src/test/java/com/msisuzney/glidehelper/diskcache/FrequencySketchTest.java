@@ -0,0 +1,71 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void frequency_countsIncrements() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("hot".hashCode());
+        }
+        sketch.increment("warm".hashCode());
+
+        assertEquals(5, sketch.frequency("hot".hashCode()));
+        assertEquals(1, sketch.frequency("warm".hashCode()));
+        assertEquals(0, sketch.frequency("cold".hashCode()));
+    }
+
+    @Test
+    public void frequency_saturatesAt15() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(42);
+        }
+        assertEquals(15, sketch.frequency(42));
+    }
+
+    @Test
+    public void increment_halvesCountersAfterSample() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(42);
+        }
+        int before = sketch.frequency(42);
+        for (int key = 1000; key < 100000; key++) {
+            sketch.increment(key);
+            int after = sketch.frequency(42);
+            if (after < before) {
+                // The increment that triggered the halving may have hit one of the counters too.
+                assertTrue("from " + before + " to " + after, after == before / 2 || after == (before + 1) / 2);
+                return;
+            }
+            before = after;
+        }
+        fail("counters were never halved");
+    }
+
+    @Test
+    public void frequency_tellsKeysApart() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int key = 0; key < 500; key++) {
+            sketch.increment(key);
+        }
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(7);
+        }
+        int overestimated = 0;
+        for (int key = 0; key < 500; key++) {
+            if (key != 7 && sketch.frequency(key) > 1) {
+                overestimated++;
+            }
+        }
+        assertEquals(11, sketch.frequency(7));
+        assertTrue("overestimated " + overestimated, overestimated < 25);
+    }
+}
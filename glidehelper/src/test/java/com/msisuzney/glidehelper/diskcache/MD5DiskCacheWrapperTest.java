@@ -0,0 +1,109 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.signature.ObjectKey;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MD5DiskCacheWrapperTest {
+    private static final long MAX_SIZE = 10 * 1024 * 1024;
+    private static final int PACK_THRESHOLD = 32 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MD5DiskCacheWrapper cache;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new MD5DiskCacheWrapper(temporaryFolder.newFolder("cache"), MAX_SIZE,
+                new DiskCacheOptions.Builder().setPackThreshold(PACK_THRESHOLD).build());
+        MappedByteBufferFileLoader.setRegistered(true);
+    }
+
+    @After
+    public void tearDown() {
+        MappedByteBufferFileLoader.setRegistered(false);
+    }
+
+    @Test
+    public void put_smallEntryIsPacked() {
+        Key key = new ObjectKey("a");
+        cache.put(key, writer(1000));
+
+        File file = cache.get(key);
+        assertNotNull(file);
+        assertFalse(file.exists());
+        assertTrue(cache.getPackedSize() > 0);
+    }
+
+    @Test
+    public void put_entryFetchedAgainIsStoredAsFile() {
+        Key key = new ObjectKey("a");
+        cache.put(key, writer(1000));
+        // Glide only writes an entry again if it couldn't read the cached one.
+        cache.put(key, writer(1000));
+
+        File file = cache.get(key);
+        assertNotNull(file);
+        assertTrue(file.exists());
+        assertEquals(1000, file.length());
+    }
+
+    @Test
+    public void put_largeEntryIsStoredAsFile() {
+        Key key = new ObjectKey("a");
+        cache.put(key, writer(PACK_THRESHOLD + 1));
+
+        File file = cache.get(key);
+        assertNotNull(file);
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void packing_failsWithoutLoader() {
+        MappedByteBufferFileLoader.setRegistered(false);
+        try {
+            cache.put(new ObjectKey("a"), writer(1000));
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("MappedByteBufferFileLoader"));
+        }
+    }
+
+    private static DiskCache.Writer writer(final int length) {
+        return new DiskCache.Writer() {
+            @Override
+            public boolean write(@NonNull File file) {
+                try {
+                    FileOutputStream out = new FileOutputStream(file);
+                    try {
+                        out.write(new byte[length]);
+                    } finally {
+                        out.close();
+                    }
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        };
+    }
+}
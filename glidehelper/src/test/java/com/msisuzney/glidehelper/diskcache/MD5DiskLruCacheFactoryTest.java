@@ -0,0 +1,91 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.signature.ObjectKey;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MD5DiskLruCacheFactoryTest {
+    private static final long SIZE = 10 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = new File(temporaryFolder.getRoot(), "cache");
+    }
+
+    @Test
+    public void build_returnsWarmedUpCache() {
+        MD5DiskLruCacheFactory factory = newFactory();
+        factory.warmUp();
+        DiskCache diskCache = factory.build();
+
+        assertNotNull(diskCache);
+        assertSame(diskCache, factory.build());
+        assertSame(diskCache, factory.getDiskCache());
+    }
+
+    @Test
+    public void warmUp_afterBuildKeepsCache() {
+        MD5DiskLruCacheFactory factory = newFactory();
+        DiskCache diskCache = factory.build();
+        factory.warmUp();
+
+        assertSame(diskCache, factory.build());
+        assertSame(diskCache, factory.getDiskCache());
+    }
+
+    @Test
+    public void build_keepsResourcesInsideCacheDirectory() {
+        MD5DiskLruCacheFactory factory = newFactory(SIZE);
+        DiskCache diskCache = factory.build();
+        diskCache.get(new ObjectKey("thumbnail"));
+
+        assertSame(diskCache, factory.getSegmentedDiskCache());
+        assertTrue(new File(cacheDir, MD5DiskLruCacheFactory.RESOURCE_DIRECTORY).isDirectory());
+        assertEquals(1, factory.getSegmentedDiskCache().getResourceStats().getLookups());
+        assertEquals(SIZE, factory.getSegmentedDiskCache().getResourceStats().getMaxSize());
+        assertEquals(0, factory.getSegmentedDiskCache().getDataStats().getLookups());
+    }
+
+    @Test
+    public void build_withoutResourceDirectoryKeepsDataCache() throws IOException {
+        assertTrue(cacheDir.mkdirs());
+        assertTrue(new File(cacheDir, MD5DiskLruCacheFactory.RESOURCE_DIRECTORY).createNewFile());
+        MD5DiskLruCacheFactory factory = newFactory(SIZE);
+        DiskCache diskCache = factory.build();
+
+        assertNotNull(diskCache);
+        assertSame(diskCache, factory.getDiskCache());
+        assertNull(factory.getSegmentedDiskCache());
+    }
+
+    private MD5DiskLruCacheFactory newFactory() {
+        return newFactory(0);
+    }
+
+    private MD5DiskLruCacheFactory newFactory(long resourceCacheSize) {
+        return new MD5DiskLruCacheFactory(new MD5DiskLruCacheFactory.CacheDirectoryGetter() {
+            @Override
+            public File getCacheDirectory() {
+                return cacheDir;
+            }
+        }, SIZE, resourceCacheSize, new DiskCacheOptions.Builder().build());
+    }
+}
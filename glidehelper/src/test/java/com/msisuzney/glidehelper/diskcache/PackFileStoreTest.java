@@ -0,0 +1,223 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackFileStoreTest {
+    private static final long MAX_SIZE = 512 * 1024;
+    private static final int ENTRY_SIZE = 10 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File cacheDir;
+    private CacheStats.Recorder stats;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = temporaryFolder.newFolder("cache");
+        stats = new CacheStats.Recorder();
+    }
+
+    @Test
+    public void append_canBeReadBack() throws IOException {
+        PackFileStore store = newStore();
+        append(store, "a", 1);
+
+        assertArrayEquals(data(1), read(store, "a"));
+        assertNull(store.getHandle("b"));
+    }
+
+    @Test
+    public void length_returnsSizeOfPackedData() throws IOException {
+        PackFileStore store = newStore();
+        append(store, "a", 1);
+        File handle = store.getHandle("a");
+
+        assertFalse(handle.exists());
+        assertEquals(ENTRY_SIZE, MD5DiskCacheWrapper.getEntrySize(handle));
+        store.remove("a");
+        assertEquals(0, store.length(handle));
+    }
+
+    @Test
+    public void append_replacesPreviousData() throws IOException {
+        PackFileStore store = newStore();
+        append(store, "a", 1);
+        append(store, "a", 2);
+
+        assertArrayEquals(data(2), read(store, "a"));
+        assertArrayEquals(data(2), read(newStore(), "a"));
+    }
+
+    @Test
+    public void remove_survivesRestart() throws IOException {
+        PackFileStore store = newStore();
+        append(store, "a", 1);
+        append(store, "b", 2);
+        store.remove("a");
+
+        assertNull(store.getHandle("a"));
+        PackFileStore reopened = newStore();
+        assertNull(reopened.getHandle("a"));
+        assertArrayEquals(data(2), read(reopened, "b"));
+    }
+
+    @Test
+    public void scan_dropsRecordCutShort() throws IOException {
+        PackFileStore store = newStore();
+        append(store, "a", 1);
+        long size = store.size();
+        FileOutputStream out = new FileOutputStream(new File(new File(cacheDir, PackFileStore.DIRECTORY), "pack-0"), true);
+        try {
+            // A record header that claims more data than follows.
+            out.write(new byte[]{0, 0, 0, 1, 'b', 0, 0, 1, 0});
+        } finally {
+            out.close();
+        }
+
+        PackFileStore reopened = newStore();
+        assertArrayEquals(data(1), read(reopened, "a"));
+        assertNull(reopened.getHandle("b"));
+        assertEquals(size, reopened.size());
+    }
+
+    @Test
+    public void read_dropsCorruptEntry() throws IOException {
+        PackFileStore store = newStore();
+        append(store, "a", 1);
+        java.io.RandomAccessFile segment = new java.io.RandomAccessFile(
+                new File(new File(cacheDir, PackFileStore.DIRECTORY), "pack-0"), "rw");
+        try {
+            segment.seek(segment.length() - 1);
+            segment.write(0x55);
+        } finally {
+            segment.close();
+        }
+
+        PackFileStore reopened = newStore();
+        assertNull(reopened.read(reopened.getHandle("a")));
+        assertNull(reopened.getHandle("a"));
+        assertEquals(1, stats.verificationFailures.get());
+    }
+
+    @Test
+    public void maintenance_dropsOldestSegmentsOverMaxSize() throws Exception {
+        PackFileStore store = newStore();
+        int count = (int) (2 * MAX_SIZE / ENTRY_SIZE);
+        for (int i = 0; i < count; i++) {
+            append(store, "k" + i, i);
+        }
+        awaitSizeAtMost(store, MAX_SIZE);
+
+        assertNull(store.getHandle("k0"));
+        assertArrayEquals(data(count - 1), read(store, "k" + (count - 1)));
+    }
+
+    @Test
+    public void compaction_keepsDeletionOfRecordInOlderSegment() throws Exception {
+        PackFileStore store = newStore();
+        fillSegmentWithDeletedKey(store, "deleted", false);
+
+        assertNull(store.getHandle("deleted"));
+        assertNull(newStore().getHandle("deleted"));
+    }
+
+    @Test
+    public void compaction_keepsKeyWrittenAgainAfterDeletion() throws Exception {
+        PackFileStore store = newStore();
+        fillSegmentWithDeletedKey(store, "deleted", true);
+
+        assertArrayEquals(data(99), read(store, "deleted"));
+        assertArrayEquals(data(99), read(newStore(), "deleted"));
+    }
+
+    /**
+     * Leaves {@code safeKey} in a mostly live first segment and its deletion in a second segment
+     * that is compacted away.
+     */
+    private void fillSegmentWithDeletedKey(PackFileStore store, String safeKey, boolean writeAgain)
+            throws Exception {
+        // 6 entries fit in a 64KB segment.
+        append(store, safeKey, 0);
+        for (int i = 1; i < 6; i++) {
+            append(store, "a" + i, i);
+        }
+        append(store, "b0", 10);
+        store.remove(safeKey);
+        if (writeAgain) {
+            append(store, safeKey, 99);
+        }
+        // Enough to start a third segment.
+        for (int i = 1; i < 7; i++) {
+            append(store, "b" + i, 10 + i);
+        }
+        // Leaves the second segment with little live data, so it is compacted.
+        for (int i = 0; i < 7; i++) {
+            store.remove("b" + i);
+        }
+        File secondSegment = new File(new File(cacheDir, PackFileStore.DIRECTORY), "pack-1");
+        for (int i = 0; i < 500 && secondSegment.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(secondSegment.exists());
+        assertTrue(new File(new File(cacheDir, PackFileStore.DIRECTORY), "pack-0").exists());
+    }
+
+    PackFileStore newStore() {
+        return new PackFileStore(cacheDir, MAX_SIZE, stats);
+    }
+
+    void append(PackFileStore store, String safeKey, int seed) throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data(seed));
+        } finally {
+            out.close();
+        }
+        assertTrue(store.append(safeKey, file));
+    }
+
+    static byte[] read(PackFileStore store, String safeKey) {
+        File handle = store.getHandle(safeKey);
+        assertNotNull(safeKey, handle);
+        ByteBuffer buffer = store.read(handle);
+        assertNotNull(safeKey, buffer);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static byte[] data(int seed) {
+        byte[] data = new byte[ENTRY_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    /**
+     * Maintenance runs on a background thread, wait for it to catch up.
+     */
+    static void awaitSizeAtMost(PackFileStore store, long size) throws InterruptedException {
+        for (int i = 0; i < 500 && store.size() > size; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue("size " + store.size(), store.size() <= size);
+    }
+}
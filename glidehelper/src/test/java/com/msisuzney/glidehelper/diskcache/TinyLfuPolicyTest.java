@@ -0,0 +1,106 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.signature.ObjectKey;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class TinyLfuPolicyTest {
+    private static final int ENTRY_SIZE = 32 * 1024;
+    private static final int ENTRY_COUNT = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private MD5DiskCacheWrapper cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("cache");
+        cache = new MD5DiskCacheWrapper(directory, ENTRY_COUNT * ENTRY_SIZE,
+                new DiskCacheOptions.Builder().setFrequencyAware(true).build());
+    }
+
+    @Test
+    public void admit_keepsFrequentEntryWithoutJournalWrites() throws Exception {
+        cache.put(new ObjectKey("cold"), writer(ENTRY_SIZE));
+        Key hot = new ObjectKey("hot");
+        cache.put(hot, writer(ENTRY_SIZE));
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cache.get(hot));
+        }
+        for (int i = 2; i < ENTRY_COUNT; i++) {
+            cache.put(new ObjectKey("k" + i), writer(ENTRY_SIZE));
+        }
+        // hot is now second in line for eviction, the new entry makes room for two.
+        Key candidate = new ObjectKey("new");
+        cache.get(candidate);
+        cache.put(candidate, writer(2 * ENTRY_SIZE));
+
+        MD5DiskCacheWrapper.getDiskLruCache(cache).flush();
+        assertEquals(3, countReadLines());
+        awaitSizeAtMost(ENTRY_COUNT * ENTRY_SIZE);
+        assertNotNull(cache.get(hot));
+    }
+
+    private int countReadLines() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(new File(directory, "journal")));
+        try {
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("READ ")) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * DiskLruCache evicts on a background thread, wait for it to catch up.
+     */
+    private void awaitSizeAtMost(long size) throws Exception {
+        for (int i = 0; i < 500 && MD5DiskCacheWrapper.getDiskLruCache(cache).size() > size; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, MD5DiskCacheWrapper.getDiskLruCache(cache).size());
+    }
+
+    static DiskCache.Writer writer(final int length) {
+        return new DiskCache.Writer() {
+            @Override
+            public boolean write(@NonNull File file) {
+                try {
+                    FileOutputStream out = new FileOutputStream(file);
+                    try {
+                        out.write(new byte[length]);
+                    } finally {
+                        out.close();
+                    }
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        };
+    }
+}
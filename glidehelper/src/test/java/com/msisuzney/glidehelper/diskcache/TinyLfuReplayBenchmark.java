@@ -0,0 +1,87 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.ObjectKey;
+import com.msisuzney.glidehelper.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Replays a feed like trace, a skewed set of images that are shown again and again mixed with
+ * long scrolls of images that are seen once, against the plain LRU and the frequency aware cache.
+ */
+public class TinyLfuReplayBenchmark {
+    private static final int ENTRY_SIZE = 32 * 1024;
+    private static final int CAPACITY = 100;
+    private static final int POPULAR_IMAGES = 500;
+    private static final int REQUESTS = 20000;
+    /**
+     * The share of requests that belong to a scroll through images seen only once.
+     */
+    private static final double ONE_OFF_SHARE = 0.4;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void replay() throws IOException {
+        String[] trace = trace(new Random(42));
+        for (boolean frequencyAware : new boolean[]{false, true}) {
+            File directory = temporaryFolder.newFolder(frequencyAware ? "tinylfu" : "lru");
+            MD5DiskCacheWrapper cache = new MD5DiskCacheWrapper(directory, (long) CAPACITY * ENTRY_SIZE,
+                    new DiskCacheOptions.Builder().setFrequencyAware(frequencyAware).build());
+            int hits = 0;
+            long start = System.nanoTime();
+            for (String id : trace) {
+                Key key = new ObjectKey(id);
+                if (cache.get(key) != null) {
+                    hits++;
+                } else {
+                    cache.put(key, TinyLfuPolicyTest.writer(ENTRY_SIZE));
+                }
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            Benchmarks.report("TinyLfuReplay", "%s: hit rate %.1f%%, %d ms",
+                    frequencyAware ? "frequency aware" : "lru", 100.0 * hits / trace.length, elapsedMillis);
+        }
+    }
+
+    /**
+     * Popular images follow a Zipf distribution, one-off images come in scrolls of 20 to 60.
+     */
+    private static String[] trace(Random random) {
+        double[] cumulative = new double[POPULAR_IMAGES];
+        double sum = 0;
+        for (int i = 0; i < POPULAR_IMAGES; i++) {
+            sum += 1 / Math.pow(i + 1, 0.9);
+            cumulative[i] = sum;
+        }
+        String[] trace = new String[REQUESTS];
+        int oneOff = 0;
+        for (int i = 0; i < REQUESTS; ) {
+            if (random.nextDouble() < ONE_OFF_SHARE / 40) {
+                int scroll = 20 + random.nextInt(41);
+                for (int j = 0; j < scroll && i < REQUESTS; j++) {
+                    trace[i++] = "once-" + oneOff++;
+                }
+            } else {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                trace[i++] = "popular-" + (index >= 0 ? index : -index - 1);
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,138 @@
+package com.msisuzney.glidehelper.diskcache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VerifiedEntryIndexTest {
+    private static final String MD5 = "6567998f4284abe3785483c218d30773";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("cache");
+    }
+
+    @Test
+    public void put_isVerifiedAfterRestart() throws IOException {
+        File file = write("a.0", 100);
+        new VerifiedEntryIndex(directory).put(file, MD5, "md5");
+
+        VerifiedEntryIndex reopened = new VerifiedEntryIndex(directory);
+        assertTrue(reopened.isVerified(file, MD5));
+        assertFalse(reopened.isVerified(file, "00000000000000000000000000000000"));
+    }
+
+    @Test
+    public void put_dirtyFileIsRecordedUnderCleanName() throws IOException {
+        File dirty = write("a.0.tmp", 100);
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        index.put(dirty, MD5, "md5");
+        File clean = new File(directory, "a.0");
+        long lastModified = dirty.lastModified();
+        assertTrue(dirty.renameTo(clean));
+        assertTrue(clean.setLastModified(lastModified));
+
+        assertTrue(index.isVerified(clean, MD5));
+    }
+
+    @Test
+    public void changedFile_isNoLongerVerified() throws IOException {
+        File file = write("a.0", 100);
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        index.put(file, MD5, "md5");
+        write("a.0", 101);
+
+        assertFalse(index.isVerified(file, MD5));
+        assertNull(new VerifiedEntryIndex(directory).get(file));
+    }
+
+    @Test
+    public void putUnverified_isRecordedButNotVerified() throws IOException {
+        File file = write("a.0", 100);
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        index.putUnverified(file, MD5, "md5");
+
+        VerifiedEntryIndex.Entry entry = new VerifiedEntryIndex(directory).get(file);
+        assertNotNull(entry);
+        assertFalse(entry.isVerified());
+        assertEquals("md5", entry.algorithm);
+
+        index.markVerified(file, index.get(file));
+        assertTrue(new VerifiedEntryIndex(directory).isVerified(file, MD5));
+    }
+
+    @Test
+    public void getScrubOrder_listsUnverifiedFirst() throws IOException {
+        File verified = write("a.0", 100);
+        File unverified = write("b.0", 100);
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        index.put(verified, MD5, "md5");
+        index.putUnverified(unverified, MD5, "md5");
+
+        assertEquals(Arrays.asList("b.0", "a.0"), index.getScrubOrder());
+    }
+
+    @Test
+    public void remove_forgetsEntry() throws IOException {
+        File file = write("a.0", 100);
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        index.put(file, MD5, "md5");
+        index.remove(file);
+
+        assertFalse(index.isVerified(file, MD5));
+    }
+
+    @Test
+    public void clear_deletesIndexFile() throws IOException {
+        File file = write("a.0", 100);
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        index.put(file, MD5, "md5");
+        index.clear();
+
+        assertFalse(new File(directory, VerifiedEntryIndex.INDEX_FILE).exists());
+        assertFalse(new VerifiedEntryIndex(directory).isVerified(file, MD5));
+    }
+
+    @Test
+    public void load_ignoresLinesWithoutAlgorithm() throws IOException {
+        File file = write("a.0", 100);
+        FileOutputStream out = new FileOutputStream(new File(directory, VerifiedEntryIndex.INDEX_FILE));
+        try {
+            out.write(("a.0 " + file.length() + " " + file.lastModified() + " " + MD5 + "\n").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        VerifiedEntryIndex index = new VerifiedEntryIndex(directory);
+        assertNull(index.get(file));
+        assertFalse(index.isVerified(file, MD5));
+    }
+
+    private File write(String name, int length) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
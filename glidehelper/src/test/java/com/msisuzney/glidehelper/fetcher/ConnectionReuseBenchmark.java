@@ -0,0 +1,233 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.msisuzney.glidehelper.Benchmarks;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Fetches the same image from a local HTTP server, once with keep-alive and once with a new
+ * connection per fetch, and counts the connections the server accepted. Over loopback a new
+ * connection only costs a TCP handshake, against a CDN it also costs a round trip or two of TLS,
+ * so the time per fetch understates the difference.
+ */
+public class ConnectionReuseBenchmark {
+    private static final int BODY_SIZE = 32 * 1024;
+    private static final int WARM_UP_FETCHES = 200;
+    private static final int FETCHES = 1000;
+
+    private LocalServer server;
+    private byte[] body;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Glide's LazyHeaders reads the default user agent, only Android sets it.
+        System.setProperty("http.agent", "test");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        Benchmarks.assumeEnabled();
+        body = new byte[BODY_SIZE];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) (i * 31);
+        }
+        server = new LocalServer(body);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void fetch() throws IOException {
+        String md5 = ChecksumAlgorithm.MD5.hash(new ByteArrayInputStream(body));
+        MD5CheckUrl url = (MD5CheckUrl) new MD5CheckUrl.Builder(
+                "http://127.0.0.1:" + server.getPort() + "/poster.jpg?md5=" + md5, "md5").build();
+        FetchOptions keepAlive = new FetchOptions.Builder().build();
+        FetchOptions close = new FetchOptions.Builder()
+                .setConnectionFactory(new HttpMD5CheckUrlFetcher.HttpUrlConnectionFactory() {
+                    @Override
+                    public HttpURLConnection build(URL url) throws IOException {
+                        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                        connection.setRequestProperty("Connection", "close");
+                        return connection;
+                    }
+                })
+                .build();
+
+        run(url, keepAlive, WARM_UP_FETCHES);
+        run(url, close, WARM_UP_FETCHES);
+        report("keep-alive", url, keepAlive);
+        report("connection per fetch", url, close);
+    }
+
+    private void report(String name, MD5CheckUrl url, FetchOptions options) throws IOException {
+        int connectionsBefore = server.getConnections();
+        long elapsedNanos = run(url, options, FETCHES);
+        Benchmarks.report("ConnectionReuse", "%s: %d fetches, %d connections, %.1f us per fetch",
+                name, FETCHES, server.getConnections() - connectionsBefore, elapsedNanos / 1000.0 / FETCHES);
+    }
+
+    private static long run(MD5CheckUrl url, FetchOptions options, int fetches) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < fetches; i++) {
+            HttpMD5CheckUrlFetcher fetcher = new HttpMD5CheckUrlFetcher(url, 2500, DiskCacheStrategy.NONE, false, options);
+            Callback callback = new Callback();
+            fetcher.loadData(Priority.NORMAL, callback);
+            fetcher.cleanup();
+            assertNull(callback.error);
+            assertEquals(BODY_SIZE, callback.length);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class Callback implements DataFetcher.DataCallback<InputStream> {
+        int length;
+        @Nullable
+        Exception error;
+
+        @Override
+        public void onDataReady(@Nullable InputStream data) {
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while (data != null && (read = data.read(buffer)) != -1) {
+                    length += read;
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        @Override
+        public void onLoadFailed(@NonNull Exception e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Serves {@code body} for every GET over HTTP/1.1, keeping connections open unless the request
+     * asks to close them.
+     */
+    private static final class LocalServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final byte[] body;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        LocalServer(byte[] body) throws IOException {
+            this.body = body;
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "benchmark-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnections() {
+            return connections.get();
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                connections.incrementAndGet();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "benchmark-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        void serve(Socket socket) {
+            try {
+                socket.setTcpNoDelay(true);
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                byte[] header = ("HTTP/1.1 200 OK\r\nContent-Type: image/jpeg\r\nContent-Length: " + body.length
+                        + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+                String request;
+                while ((request = readRequest(in)) != null) {
+                    out.write(header);
+                    out.write(body);
+                    out.flush();
+                    if (request.toLowerCase(Locale.US).contains("\r\nconnection: close")) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // The client went away.
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        /**
+         * Returns the request line and headers, or null at the end of the stream.
+         */
+        @Nullable
+        private static String readRequest(InputStream in) throws IOException {
+            StringBuilder request = new StringBuilder();
+            int b;
+            while ((b = in.read()) != -1) {
+                request.append((char) b);
+                int length = request.length();
+                if (length >= 4 && request.charAt(length - 4) == '\r' && request.charAt(length - 3) == '\n'
+                        && request.charAt(length - 2) == '\r' && request.charAt(length - 1) == '\n') {
+                    return request.toString();
+                }
+            }
+            return null;
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
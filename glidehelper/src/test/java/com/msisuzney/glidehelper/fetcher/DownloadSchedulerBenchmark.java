@@ -0,0 +1,134 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import com.bumptech.glide.Priority;
+import com.msisuzney.glidehelper.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Queues a scroll's worth of {@link Priority#LOW} prefetches and then the images that came on
+ * screen as {@link Priority#IMMEDIATE}, with every download taking the same fixed time, and
+ * measures how long the on screen images take. Without the scheduler the downloads run first come
+ * first served on a pool of the same size, like they did on Glide's source threads.
+ */
+public class DownloadSchedulerBenchmark {
+    private static final int MAX_CONCURRENT = 6;
+    private static final int PREFETCHES = 60;
+    private static final int ON_SCREEN = 6;
+    private static final long DOWNLOAD_MILLIS = 20;
+    private static final int OVERHEAD_DOWNLOADS = 100000;
+    /**
+     * The downloads queued or running at once while measuring the overhead, a few screens of
+     * prefetches.
+     */
+    private static final int OVERHEAD_QUEUE_DEPTH = 100;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void onScreenLatency() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(MAX_CONCURRENT);
+        try {
+            report("first come first served", burst(null, pool));
+        } finally {
+            pool.shutdown();
+        }
+        report("scheduler", burst(new DownloadScheduler(MAX_CONCURRENT, MAX_CONCURRENT, 60000), null));
+    }
+
+    @Test
+    public void dispatchOverhead() throws InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(MAX_CONCURRENT, 2, 60000);
+        // Warm up, then measure.
+        enqueueNoOps(scheduler, OVERHEAD_DOWNLOADS);
+        long elapsedNanos = enqueueNoOps(scheduler, OVERHEAD_DOWNLOADS);
+        Benchmarks.report("DownloadScheduler", "dispatch: %d empty downloads over 4 hosts, %d queued at a time, %.2f us each",
+                OVERHEAD_DOWNLOADS, OVERHEAD_QUEUE_DEPTH, elapsedNanos / 1000.0 / OVERHEAD_DOWNLOADS);
+    }
+
+    private static void report(String name, long[] onScreenNanos) {
+        long total = 0;
+        long max = 0;
+        for (long nanos : onScreenNanos) {
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+        Benchmarks.report("DownloadScheduler", "%s: on screen images done after %.1f ms on average, %.1f ms at most",
+                name, total / 1e6 / onScreenNanos.length, max / 1e6);
+    }
+
+    /**
+     * Runs the burst through {@code scheduler}, or on {@code pool} in queue order if it is null.
+     *
+     * @return the time from queueing to done of each on screen image.
+     */
+    private static long[] burst(final DownloadScheduler scheduler, ExecutorService pool) throws InterruptedException {
+        final long[] onScreenNanos = new long[ON_SCREEN];
+        final CountDownLatch done = new CountDownLatch(PREFETCHES + ON_SCREEN);
+        for (int i = 0; i < PREFETCHES + ON_SCREEN; i++) {
+            final int onScreen = i - PREFETCHES;
+            final long start = System.nanoTime();
+            final DownloadScheduler.Ticket[] ticket = new DownloadScheduler.Ticket[1];
+            Runnable download = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(DOWNLOAD_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (onScreen >= 0) {
+                        onScreenNanos[onScreen] = System.nanoTime() - start;
+                    }
+                    if (scheduler != null) {
+                        scheduler.finish(ticket[0]);
+                    }
+                    done.countDown();
+                }
+            };
+            if (scheduler == null) {
+                pool.execute(download);
+            } else {
+                ticket[0] = new DownloadScheduler.Ticket("cdn.example.com",
+                        onScreen >= 0 ? Priority.IMMEDIATE : Priority.LOW, download);
+                scheduler.enqueue(ticket[0]);
+            }
+        }
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return onScreenNanos;
+    }
+
+    private static long enqueueNoOps(final DownloadScheduler scheduler, int count) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(count);
+        final Semaphore queued = new Semaphore(OVERHEAD_QUEUE_DEPTH);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            queued.acquire();
+            final DownloadScheduler.Ticket[] ticket = new DownloadScheduler.Ticket[1];
+            ticket[0] = new DownloadScheduler.Ticket("host" + (i % 4), Priority.values()[i % 4], new Runnable() {
+                @Override
+                public void run() {
+                    scheduler.finish(ticket[0]);
+                    queued.release();
+                    done.countDown();
+                }
+            });
+            scheduler.enqueue(ticket[0]);
+        }
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+}
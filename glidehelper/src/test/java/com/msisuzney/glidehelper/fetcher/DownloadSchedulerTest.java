@@ -0,0 +1,109 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import com.bumptech.glide.Priority;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final List<String> started = new ArrayList<>();
+
+    @Test
+    public void enqueue_startsDownloadsByPriorityWithoutBlocking() throws InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.enqueue(newTicket(scheduler, "running", "a", Priority.LOW, release, null));
+        // Queued on this thread while the only slot is taken.
+        scheduler.enqueue(newTicket(scheduler, "low", "a", Priority.LOW, null, done));
+        scheduler.enqueue(newTicket(scheduler, "normal", "a", Priority.NORMAL, null, done));
+        scheduler.enqueue(newTicket(scheduler, "immediate", "a", Priority.IMMEDIATE, null, done));
+        assertEquals(3, scheduler.getQueueDepth());
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("running", "immediate", "normal", "low"), started());
+        assertEquals(4, scheduler.getStartedCount());
+    }
+
+    @Test
+    public void enqueue_limitsConnectionsPerHost() throws InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(2, 1, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.enqueue(newTicket(scheduler, "a1", "a", Priority.NORMAL, release, null));
+        scheduler.enqueue(newTicket(scheduler, "a2", "a", Priority.IMMEDIATE, release, null));
+        scheduler.enqueue(newTicket(scheduler, "b", "b", Priority.LOW, null, done));
+
+        // b starts although a2 was queued first and is more urgent.
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getRunningCount());
+        assertTrue(started().contains("b"));
+        release.countDown();
+    }
+
+    @Test
+    public void cancel_runsPendingDownloadToReportIt() throws InterruptedException {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.enqueue(newTicket(scheduler, "running", "a", Priority.NORMAL, release, null));
+        DownloadScheduler.Ticket cancelled = newTicket(scheduler, "cancelled", "a", Priority.NORMAL, null, done);
+        scheduler.enqueue(cancelled);
+        scheduler.cancel(cancelled);
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getRunningCount());
+        release.countDown();
+    }
+
+    private List<String> started() {
+        synchronized (started) {
+            return new ArrayList<>(started);
+        }
+    }
+
+    /**
+     * Returns a ticket whose download records its name, waits for {@code release} if given, then
+     * frees its slot and counts down {@code done}.
+     */
+    private DownloadScheduler.Ticket newTicket(final DownloadScheduler scheduler, final String name, String host,
+                                               Priority priority, final CountDownLatch release,
+                                               final CountDownLatch done) {
+        final DownloadScheduler.Ticket[] ticket = new DownloadScheduler.Ticket[1];
+        ticket[0] = new DownloadScheduler.Ticket(host, priority, new Runnable() {
+            @Override
+            public void run() {
+                if (ticket[0].state == DownloadScheduler.Ticket.RUNNING) {
+                    synchronized (started) {
+                        started.add(name);
+                    }
+                }
+                try {
+                    if (release != null) {
+                        release.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scheduler.finish(ticket[0]);
+                if (done != null) {
+                    done.countDown();
+                }
+            }
+        });
+        return ticket[0];
+    }
+}
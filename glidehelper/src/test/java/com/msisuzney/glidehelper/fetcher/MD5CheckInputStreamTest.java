@@ -0,0 +1,130 @@
+package com.msisuzney.glidehelper.fetcher;
+
+import androidx.annotation.NonNull;
+
+import com.msisuzney.glidehelper.MD5EventListener;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+import com.msisuzney.glidehelper.utils.ChecksumAlgorithm;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MD5CheckInputStreamTest {
+    private static final byte[] ABC = "abc".getBytes(Charset.forName("UTF-8"));
+    private static final String ABC_MD5 = "900150983cd24fb0d6963f7d28e17f72";
+
+    private final RecordingListener listener = new RecordingListener();
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Glide's LazyHeaders reads the default user agent, only Android sets it.
+        System.setProperty("http.agent", "test");
+    }
+
+    @Test
+    public void read_matchingBodyReportsHash() throws IOException {
+        MD5CheckInputStream stream = new MD5CheckInputStream(new ByteArrayInputStream(ABC), url(ABC_MD5), listener);
+        readFully(stream);
+
+        assertTrue(stream.isVerified());
+        assertEquals(Arrays.asList("hashStart", "hashEnd:true"), listener.events);
+    }
+
+    @Test
+    public void read_mismatchReportsFailure() throws IOException {
+        MD5CheckInputStream stream = new MD5CheckInputStream(new ByteArrayInputStream(ABC),
+                url("00000000000000000000000000000000"), listener);
+        readFully(stream);
+        // Reading past the end again doesn't report twice.
+        assertEquals(-1, stream.read());
+
+        assertFalse(stream.isVerified());
+        assertEquals(Arrays.asList("hashStart", "hashEnd:false", "fetchFailed"), listener.events);
+    }
+
+    @Test
+    public void read_errorReportsFailure() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Canceled");
+            }
+        };
+        MD5CheckInputStream stream = new MD5CheckInputStream(failing, url(ABC_MD5), listener);
+        try {
+            stream.read();
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        assertEquals(Arrays.asList("hashStart", "fetchFailed"), listener.events);
+    }
+
+    @Test
+    public void close_beforeEndIsNotVerified() throws IOException {
+        MD5CheckInputStream stream = new MD5CheckInputStream(new ByteArrayInputStream(ABC), url(ABC_MD5));
+        assertEquals('a', stream.read());
+        stream.close();
+        readFully(stream);
+
+        assertFalse(stream.isVerified());
+    }
+
+    @Test
+    public void verified_keepsAlgorithmOfUrl() throws IOException {
+        MD5CheckUrl url = (MD5CheckUrl) new MD5CheckUrl.Builder("https://a.com/x.jpg?h=44bc2cf5ad770999", "h")
+                .setChecksumAlgorithm(ChecksumAlgorithm.XXH64)
+                .build();
+        MD5CheckInputStream stream = MD5CheckInputStream.verified(new ByteArrayInputStream(ABC), url);
+        readFully(stream);
+
+        assertTrue(stream.isVerified());
+        assertSame(ChecksumAlgorithm.XXH64, stream.getChecksumAlgorithm());
+        assertEquals("44bc2cf5ad770999", stream.getMd5Value());
+    }
+
+    private static MD5CheckUrl url(String md5) {
+        return (MD5CheckUrl) new MD5CheckUrl.Builder("https://a.com/x.jpg?md5=" + md5, "md5").build();
+    }
+
+    private static void readFully(InputStream in) throws IOException {
+        byte[] buffer = new byte[2];
+        while (in.read(buffer, 0, buffer.length) != -1) {
+            // Keep reading.
+        }
+    }
+
+    private static final class RecordingListener extends MD5EventListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void hashStart(@NonNull MD5CheckUrl url) {
+            events.add("hashStart");
+        }
+
+        @Override
+        public void hashEnd(@NonNull MD5CheckUrl url, boolean matches) {
+            events.add("hashEnd:" + matches);
+        }
+
+        @Override
+        public void fetchFailed(@NonNull MD5CheckUrl url, @NonNull Exception e) {
+            events.add("fetchFailed");
+        }
+    }
+}
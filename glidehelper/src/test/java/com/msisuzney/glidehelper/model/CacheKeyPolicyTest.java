@@ -0,0 +1,87 @@
+package com.msisuzney.glidehelper.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class CacheKeyPolicyTest {
+    private static final String URL = "https://a.com/x.jpg?md5=1&t=2&sign=3";
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Glide's LazyHeaders reads the default user agent, only Android sets it.
+        System.setProperty("http.agent", "test");
+    }
+
+    @Test
+    public void fullUrl_returnsUrlItself() {
+        assertSame(URL, CacheKeyPolicy.FULL_URL.apply(URL));
+    }
+
+    @Test
+    public void ignoring_dropsListedParameters() {
+        CacheKeyPolicy policy = CacheKeyPolicy.ignoring("t", "sign");
+        assertEquals("https://a.com/x.jpg?md5=1", policy.apply(URL));
+        assertEquals("https://a.com/x.jpg?md5=1#f", policy.apply("https://a.com/x.jpg?t=2&md5=1&sign=3#f"));
+        assertEquals("https://a.com/x.jpg", policy.apply("https://a.com/x.jpg?t=2&sign=3"));
+    }
+
+    @Test
+    public void ignoring_returnsUrlItselfIfNothingIsDropped() {
+        String url = "https://a.com/x.jpg?md5=1";
+        assertSame(url, CacheKeyPolicy.ignoring("t").apply(url));
+    }
+
+    @Test
+    public void ignoring_keepsValuesEndingInSeparators() {
+        assertEquals("https://a.com/x?a=?&b=1", CacheKeyPolicy.ignoring("t").apply("https://a.com/x?t=0&a=?&b=1"));
+    }
+
+    @Test
+    public void keeping_keepsOnlyListedParameters() {
+        CacheKeyPolicy policy = CacheKeyPolicy.keeping("md5", "w");
+        assertEquals("https://b.com:81/x.jpg?md5=1&w=5", policy.apply("https://b.com:81/x.jpg?t=9&md5=1&w=5&z"));
+        assertEquals("https://a.com/x.jpg", policy.apply("https://a.com/x.jpg?t=2"));
+    }
+
+    @Test
+    public void retaining_keepsParameterInKey() {
+        assertEquals("https://a.com/x.jpg?md5=1&w=5", CacheKeyPolicy.keeping("w").retaining("md5")
+                .apply("https://a.com/x.jpg?t=9&md5=1&w=5"));
+        assertEquals("https://a.com/x.jpg?md5=1", CacheKeyPolicy.ignoring("md5", "t", "sign").retaining("md5").apply(URL));
+        assertSame(CacheKeyPolicy.FULL_URL, CacheKeyPolicy.FULL_URL.retaining("md5"));
+        CacheKeyPolicy policy = CacheKeyPolicy.ignoring("t");
+        assertSame(policy, policy.retaining("md5"));
+    }
+
+    @Test
+    public void builder_keepsMd5InKey() {
+        CacheKeyPolicy policy = CacheKeyPolicy.keeping("w");
+        Object first = new MD5CheckUrl.Builder("https://a.com/x.jpg?md5=1&w=5&t=1", "md5").setCacheKeyPolicy(policy).build();
+        Object sameMd5 = new MD5CheckUrl.Builder("https://a.com/x.jpg?md5=1&w=5&t=2", "md5").setCacheKeyPolicy(policy).build();
+        Object otherMd5 = new MD5CheckUrl.Builder("https://a.com/x.jpg?md5=2&w=5&t=1", "md5").setCacheKeyPolicy(policy).build();
+
+        assertEquals(first, sameMd5);
+        assertNotEquals(first, otherMd5);
+        assertNotEquals(((MD5CheckUrl) first).getCacheKey(), ((MD5CheckUrl) otherMd5).getCacheKey());
+    }
+
+    @Test
+    public void ignoringHost_dropsSchemeHostAndPort() {
+        CacheKeyPolicy policy = CacheKeyPolicy.ignoring("t").ignoringHost();
+        assertEquals("/x.jpg?md5=1", policy.apply("https://cdn1.a.com:8080/x.jpg?md5=1&t=2"));
+        assertEquals("?md5=1", policy.apply("https://a.com?t=1&md5=1"));
+        assertEquals("", policy.apply("https://a.com"));
+    }
+
+    @Test
+    public void equals_comparesConfiguration() {
+        assertEquals(CacheKeyPolicy.ignoring("t", "sign"), CacheKeyPolicy.ignoring("sign", "t"));
+        assertEquals(CacheKeyPolicy.ignoring("t").hashCode(), CacheKeyPolicy.ignoring("t").hashCode());
+        assertNotEquals(CacheKeyPolicy.ignoring("t"), CacheKeyPolicy.keeping("t"));
+        assertNotEquals(CacheKeyPolicy.ignoring("t"), CacheKeyPolicy.ignoring("t").ignoringHost());
+    }
+}
@@ -0,0 +1,77 @@
+package com.msisuzney.glidehelper.request;
+
+import androidx.annotation.NonNull;
+
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MD5CheckPrefetcherTest {
+    private static final int RUNS = 1000;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Glide's LazyHeaders reads the default user agent, only Android sets it.
+        System.setProperty("http.agent", "test");
+    }
+
+    @Test
+    public void onFinished_completesOnceWhenLastUrlsFinishConcurrently() throws Exception {
+        MD5CheckPrefetcher prefetcher = new MD5CheckPrefetcher(2, null, null);
+        final MD5CheckUrl a = newUrl("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+        final MD5CheckUrl b = newUrl("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+        for (int run = 0; run < RUNS; run++) {
+            final AtomicInteger completions = new AtomicInteger();
+            final MD5CheckPrefetcher.Batch batch = prefetcher.new Batch(Arrays.asList(a, b),
+                    new MD5CheckPrefetcher.Listener() {
+                        @Override
+                        public void onProgress(@NonNull MD5CheckPrefetcher.Progress progress) {
+                        }
+
+                        @Override
+                        public void onComplete(@NonNull MD5CheckPrefetcher.Progress progress) {
+                            assertTrue(progress.isDone());
+                            completions.incrementAndGet();
+                        }
+                    });
+            assertEquals(a, batch.nextUrl());
+            assertEquals(b, batch.nextUrl());
+
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+            Thread other = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(barrier);
+                    batch.onFinished(b, null, null);
+                }
+            });
+            other.start();
+            await(barrier);
+            batch.onFinished(a, null, null);
+            other.join();
+
+            assertEquals(1, completions.get());
+            assertEquals(2, batch.getProgress().getFailed());
+        }
+    }
+
+    private static MD5CheckUrl newUrl(String md5) {
+        return (MD5CheckUrl) new MD5CheckUrl.Builder("https://cdn.example.com/" + md5 + ".jpg?md5=" + md5, "md5").build();
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
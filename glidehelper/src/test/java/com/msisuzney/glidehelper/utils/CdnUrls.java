@@ -0,0 +1,100 @@
+package com.msisuzney.glidehelper.utils;
+
+import com.msisuzney.glidehelper.Benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Image urls shaped like the ones our CDNs serve: feed images with size parameters, posters with
+ * processing instructions and expiring tokens, a few with ports, escapes, upper case md5 values
+ * or upper case hosts, and a loop that measures work over them.
+ */
+final class CdnUrls {
+    private static final long WARM_UP_NANOS = 500L * 1000 * 1000;
+    private static final long MEASURE_NANOS = 1000L * 1000 * 1000;
+
+    // Keeps the results alive so the work isn't optimized away.
+    private static int sink;
+
+    private CdnUrls() {
+    }
+
+    static String[] generate(int count, long seed) {
+        Random random = new Random(seed);
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            String md5 = hex(random, 32);
+            int id = random.nextInt(10000000);
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                    urls[i] = "https://img" + random.nextInt(4) + ".cdn.example.com/feed/2024/" + (1 + random.nextInt(12))
+                            + "/" + hex(random, 12) + "_720x1280.jpg?md5=" + md5 + "&w=720";
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                    urls[i] = "https://cdn.example.com/poster/" + id
+                            + ".webp?x-oss-process=image/resize,w_360/format,webp&md5=" + md5 + "&t="
+                            + (1700000000 + random.nextInt(10000000)) + "&sign=" + hex(random, 16);
+                    break;
+                case 7:
+                    urls[i] = "http://static.example.com:8080/a/" + id + ".png?md5=" + md5.toUpperCase(Locale.US);
+                    break;
+                case 8:
+                    urls[i] = "https://cdn.example.com/%E6%B5%B7%E6%8A%A5/" + id + ".jpg?title=a%20b+c&md5=" + md5;
+                    break;
+                default:
+                    urls[i] = "https://IMG.CDN.example.com/thumb/" + id + ".jpg?w=200&h=200&md5=" + md5;
+                    break;
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Applies {@code function} to every url, over and over, first to warm up and then to measure,
+     * and reports the time and the bytes allocated per url.
+     */
+    static void measure(String benchmark, String name, String[] urls, UrlFunction function) {
+        pass(urls, function, WARM_UP_NANOS);
+        long allocatedBefore = Benchmarks.allocatedBytes();
+        long start = System.nanoTime();
+        long count = pass(urls, function, MEASURE_NANOS);
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = Benchmarks.allocatedBytes() - allocatedBefore;
+        Benchmarks.report(benchmark, "%s: %.0f ns, %d bytes allocated per url", name,
+                (double) elapsedNanos / count, allocatedBefore < 0 ? -1 : allocated / count);
+    }
+
+    /**
+     * @return the number of urls processed.
+     */
+    private static long pass(String[] urls, UrlFunction function, long nanos) {
+        long count = 0;
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos) {
+            for (String url : urls) {
+                Object result = function.apply(url);
+                sink += result == null ? 0 : result.hashCode();
+            }
+            count += urls.length;
+        }
+        return count;
+    }
+
+    abstract static class UrlFunction {
+        abstract Object apply(String url);
+    }
+
+    private static String hex(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = "0123456789abcdef".charAt(random.nextInt(16));
+        }
+        return new String(chars);
+    }
+}
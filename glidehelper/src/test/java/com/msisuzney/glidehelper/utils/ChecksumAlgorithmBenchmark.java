@@ -0,0 +1,99 @@
+package com.msisuzney.glidehelper.utils;
+
+import com.msisuzney.glidehelper.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies a 256KB image with every {@link ChecksumAlgorithm}, the way the fetcher verifies a
+ * download, {@link ChecksumAlgorithm#copyAndVerify} into a buffer, and the way a memory mapped
+ * cache hit is verified, {@link ChecksumAlgorithm#verify(ByteBuffer, byte[])}.
+ */
+public class ChecksumAlgorithmBenchmark {
+    private static final int IMAGE_SIZE = 256 * 1024;
+    private static final long MEASURE_NANOS = 1000L * 1000 * 1000;
+    private static final ChecksumAlgorithm[] ALGORITHMS = {
+            ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA256, ChecksumAlgorithm.CRC32, ChecksumAlgorithm.XXH64,
+    };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private byte[] image;
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+        image = new byte[IMAGE_SIZE];
+        // Incompressible, like a jpeg body.
+        new Random(7).nextBytes(image);
+    }
+
+    @Test
+    public void download() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(IMAGE_SIZE);
+        for (ChecksumAlgorithm algorithm : ALGORITHMS) {
+            byte[] expected = ChecksumAlgorithm.decodeHex(algorithm.hash(new ByteArrayInputStream(image)));
+            int runs = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                out.reset();
+                assertTrue(algorithm.copyAndVerify(new ByteArrayInputStream(image), out, expected));
+                runs++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < MEASURE_NANOS || runs < 10);
+            report("download", algorithm, runs, elapsed);
+        }
+    }
+
+    @Test
+    public void mappedCacheHit() throws IOException {
+        File file = temporaryFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(image);
+        } finally {
+            out.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, IMAGE_SIZE);
+            for (ChecksumAlgorithm algorithm : ALGORITHMS) {
+                byte[] expected = ChecksumAlgorithm.decodeHex(algorithm.hash(new ByteArrayInputStream(image)));
+                int runs = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    assertTrue(algorithm.verify(buffer, expected));
+                    runs++;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < MEASURE_NANOS || runs < 10);
+                report("mapped cache hit", algorithm, runs, elapsed);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void report(String path, ChecksumAlgorithm algorithm, int runs, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        Benchmarks.report("ChecksumAlgorithm", "%s, %s: %.0f MB/s, %.1f us per image", path, algorithm.getName(),
+                (double) runs * IMAGE_SIZE / (1024 * 1024) / seconds, elapsedNanos / 1000.0 / runs);
+    }
+}
@@ -0,0 +1,192 @@
+package com.msisuzney.glidehelper.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChecksumAlgorithmTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String LONG_INPUT = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    @Test
+    public void md5_matchesKnownVectors() throws IOException {
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", hash(ChecksumAlgorithm.MD5, ""));
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", hash(ChecksumAlgorithm.MD5, "abc"));
+    }
+
+    @Test
+    public void sha256_matchesKnownVectors() throws IOException {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                hash(ChecksumAlgorithm.SHA256, ""));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                hash(ChecksumAlgorithm.SHA256, "abc"));
+    }
+
+    @Test
+    public void crc32_matchesKnownVectors() throws IOException {
+        assertEquals("00000000", hash(ChecksumAlgorithm.CRC32, ""));
+        assertEquals("cbf43926", hash(ChecksumAlgorithm.CRC32, "123456789"));
+    }
+
+    @Test
+    public void xxh64_matchesKnownVectors() throws IOException {
+        assertEquals("ef46db3751d8e999", hash(ChecksumAlgorithm.XXH64, ""));
+        assertEquals("d24ec4f1a98c6e5b", hash(ChecksumAlgorithm.XXH64, "a"));
+        assertEquals("44bc2cf5ad770999", hash(ChecksumAlgorithm.XXH64, "abc"));
+        assertEquals("fbcea83c8a378bf1", hash(ChecksumAlgorithm.XXH64, "Nobody inspects the spammish repetition"));
+        assertEquals("7639d419de614eed", hash(ChecksumAlgorithm.XXH64, LONG_INPUT));
+    }
+
+    @Test
+    public void xxh64_splitUpdates_matchOneShot() {
+        byte[] data = sequence(1000);
+        String expected = "99594f4828043d35";
+        for (int split = 0; split <= 70; split++) {
+            ChecksumAlgorithm.Hasher hasher = ChecksumAlgorithm.XXH64.newHasher();
+            hasher.update(data, 0, split);
+            hasher.update(data, split, data.length - split);
+            assertEquals("split at " + split, expected, hasher.digestHex());
+        }
+    }
+
+    @Test
+    public void xxh64_mixedUpdatesWithDirectBuffer_matchKnownVectors() {
+        // One byte pending, then a direct buffer too short to fill the stripe.
+        ChecksumAlgorithm.Hasher hasher = ChecksumAlgorithm.XXH64.newHasher();
+        hasher.update((byte) 'a');
+        hasher.update(direct("bc".getBytes(UTF_8)));
+        assertEquals("44bc2cf5ad770999", hasher.digestHex());
+
+        hasher.update(direct(new byte[0]));
+        hasher.update(direct("a".getBytes(UTF_8)));
+        assertEquals("d24ec4f1a98c6e5b", hasher.digestHex());
+
+        byte[] input = LONG_INPUT.getBytes(UTF_8);
+        for (int split = 0; split <= input.length; split++) {
+            hasher.update(input, 0, split);
+            hasher.update(direct(Arrays.copyOfRange(input, split, input.length)));
+            assertEquals("split at " + split, "7639d419de614eed", hasher.digestHex());
+        }
+    }
+
+    @Test
+    public void xxh64_directBuffers_matchOneShot() {
+        byte[] data = sequence(1000);
+        for (int chunk = 1; chunk <= 70; chunk++) {
+            ChecksumAlgorithm.Hasher hasher = ChecksumAlgorithm.XXH64.newHasher();
+            for (int off = 0; off < data.length; off += chunk) {
+                int len = Math.min(chunk, data.length - off);
+                if (off % 3 == 0) {
+                    hasher.update(data, off, len);
+                } else {
+                    hasher.update(direct(Arrays.copyOfRange(data, off, off + len)));
+                }
+            }
+            assertEquals("chunk " + chunk, "99594f4828043d35", hasher.digestHex());
+        }
+    }
+
+    @Test
+    public void acquireHasher_reusesReleasedHasherReset() {
+        ChecksumAlgorithm.Hasher hasher = ChecksumAlgorithm.XXH64.acquireHasher();
+        hasher.update((byte) 'x');
+        ChecksumAlgorithm.XXH64.releaseHasher(hasher);
+
+        ChecksumAlgorithm.Hasher reused = ChecksumAlgorithm.XXH64.acquireHasher();
+        assertSame(hasher, reused);
+        byte[] abc = "abc".getBytes(UTF_8);
+        reused.update(abc, 0, abc.length);
+        assertEquals("44bc2cf5ad770999", reused.digestHex());
+        ChecksumAlgorithm.XXH64.releaseHasher(reused);
+    }
+
+    @Test
+    public void digest_resetsHasher() {
+        ChecksumAlgorithm.Hasher hasher = ChecksumAlgorithm.XXH64.newHasher();
+        byte[] abc = "abc".getBytes(UTF_8);
+        hasher.update(abc, 0, abc.length);
+        hasher.digest();
+        hasher.update(abc, 0, abc.length);
+        assertEquals("44bc2cf5ad770999", hasher.digestHex());
+    }
+
+    @Test
+    public void verify_comparesAgainstDecodedDigest() throws IOException {
+        byte[] data = sequence(10000);
+        for (ChecksumAlgorithm algorithm : new ChecksumAlgorithm[]{ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA256,
+                ChecksumAlgorithm.CRC32, ChecksumAlgorithm.XXH64}) {
+            byte[] expected = ChecksumAlgorithm.decodeHex(algorithm.hash(new ByteArrayInputStream(data)));
+            assertTrue(algorithm.getName(), algorithm.verify(new ByteArrayInputStream(data), expected));
+            assertTrue(algorithm.getName(), algorithm.verify(ByteBuffer.wrap(data), expected));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(algorithm.getName(), algorithm.copyAndVerify(new ByteArrayInputStream(data), out, expected));
+            assertArrayEquals(data, out.toByteArray());
+
+            data[5000]++;
+            assertFalse(algorithm.getName(), algorithm.verify(new ByteArrayInputStream(data), expected));
+            data[5000]--;
+        }
+    }
+
+    @Test
+    public void verify_byteBuffer_keepsPosition() {
+        ByteBuffer buffer = ByteBuffer.wrap("xabc".getBytes(UTF_8));
+        buffer.position(1);
+        assertTrue(ChecksumAlgorithm.XXH64.verify(buffer, ChecksumAlgorithm.decodeHex("44bc2cf5ad770999")));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void decodeHex_acceptsEitherCase() {
+        assertArrayEquals(new byte[]{(byte) 0xAB, 0x01}, ChecksumAlgorithm.decodeHex("ab01"));
+        assertArrayEquals(new byte[]{(byte) 0xAB, 0x01}, ChecksumAlgorithm.decodeHex("AB01"));
+        assertEquals("ab01", ChecksumAlgorithm.toHexString(new byte[]{(byte) 0xAB, 0x01}));
+    }
+
+    @Test
+    public void decodeHex_rejectsInvalidHex() {
+        assertNull(ChecksumAlgorithm.decodeHex("abc"));
+        assertNull(ChecksumAlgorithm.decodeHex("zz"));
+    }
+
+    @Test
+    public void forName_findsKnownAlgorithms() {
+        assertSame(ChecksumAlgorithm.MD5, ChecksumAlgorithm.forName("MD5"));
+        assertSame(ChecksumAlgorithm.SHA256, ChecksumAlgorithm.forName("sha-256"));
+        assertSame(ChecksumAlgorithm.CRC32, ChecksumAlgorithm.forName("crc32"));
+        assertSame(ChecksumAlgorithm.XXH64, ChecksumAlgorithm.forName("xxh64"));
+        assertNull(ChecksumAlgorithm.forName("sha1"));
+    }
+
+    private static String hash(ChecksumAlgorithm algorithm, String input) throws IOException {
+        return algorithm.hash(new ByteArrayInputStream(input.getBytes(UTF_8)));
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    static byte[] sequence(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,71 @@
+package com.msisuzney.glidehelper.utils;
+
+import com.msisuzney.glidehelper.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Measures time and allocation per url of the {@link HttpUrl} operations the library uses, over a
+ * corpus of CDN urls. Parsing alone leaves the query as one string, reading a parameter scans it,
+ * and listing the names splits it up, so the gap between those shows what the lazy query saves.
+ */
+public class HttpUrlBenchmark {
+    private static final int URLS = 1000;
+
+    private String[] urls;
+    private String[] hosts;
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+        urls = CdnUrls.generate(URLS, 42);
+        hosts = new String[URLS];
+        for (int i = 0; i < URLS; i++) {
+            assertNotNull(urls[i], HttpUrl.parse(urls[i]));
+            // The hosts as written, some upper case, so canonicalizeHost() has work to do.
+            int start = urls[i].indexOf("://") + 3;
+            hosts[i] = urls[i].substring(start, urls[i].indexOf('/', start)).replaceFirst(":\\d+$", "");
+        }
+    }
+
+    @Test
+    public void parse() {
+        CdnUrls.measure("HttpUrl", "parse()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return HttpUrl.parse(url);
+            }
+        });
+        CdnUrls.measure("HttpUrl", "parse().queryParameter()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return HttpUrl.parse(url).queryParameter("md5");
+            }
+        });
+        CdnUrls.measure("HttpUrl", "parse().queryParameterNames()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return HttpUrl.parse(url).queryParameterNames();
+            }
+        });
+        CdnUrls.measure("HttpUrl", "parse().newBuilder().build()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return HttpUrl.parse(url).newBuilder().build();
+            }
+        });
+    }
+
+    @Test
+    public void canonicalizeHost() {
+        CdnUrls.measure("HttpUrl", "canonicalizeHost()", hosts, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String host) {
+                return HttpUrl.canonicalizeHost(host);
+            }
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package com.msisuzney.glidehelper.utils;
+
+import com.msisuzney.glidehelper.Benchmarks;
+import com.msisuzney.glidehelper.model.MD5CheckUrl;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads the md5 parameter of a corpus of CDN urls with {@link UrlQuery}, with a full
+ * {@link HttpUrl#parse(String)} like {@link MD5CheckUrl.Builder} used to, and builds the whole
+ * model with {@link MD5CheckUrl.Builder#build()}, reporting time and allocation per url.
+ */
+public class UrlQueryBenchmark {
+    private static final int URLS = 1000;
+
+    private String[] urls;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Glide's LazyHeaders reads the default user agent, only Android sets it.
+        System.setProperty("http.agent", "test");
+    }
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+        urls = CdnUrls.generate(URLS, 42);
+    }
+
+    @Test
+    public void md5Parameter() {
+        for (String url : urls) {
+            assertEquals(url, HttpUrl.parse(url).queryParameter("md5"), UrlQuery.queryParameter(url, "md5"));
+        }
+        CdnUrls.measure("UrlQuery", "HttpUrl.parse().queryParameter()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return HttpUrl.parse(url).queryParameter("md5");
+            }
+        });
+        CdnUrls.measure("UrlQuery", "UrlQuery.queryParameter()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return UrlQuery.queryParameter(url, "md5");
+            }
+        });
+        CdnUrls.measure("UrlQuery", "MD5CheckUrl.Builder.build()", urls, new CdnUrls.UrlFunction() {
+            @Override
+            Object apply(String url) {
+                return new MD5CheckUrl.Builder(url, "md5").build();
+            }
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package com.msisuzney.glidehelper.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link UrlQuery#queryParameter(String, String)} must always agree with {@link HttpUrl}.
+ */
+public class UrlQueryTest {
+    static final String[] CORPUS = {
+            "https://img.cdn.example.com/feed/2024/05/abc123_720x1280.jpg?md5=9e107d9d372bb6826bd81d3542a419d6&w=720",
+            "http://cdn.example.com:8080/a/b/c.webp?x-oss-process=image/resize,w_200&md5=9E107D9D372BB6826BD81D3542A419D6",
+            "https://cdn.example.com/p?%6Dd5=abc&md5=def",
+            "https://cdn.example.com/p?md5",
+            "https://cdn.example.com/p?md5=&md5=x",
+            "https://cdn.example.com/p#?md5=1",
+            "https://cdn.example.com/p?a=1#md5=2&md5=3",
+            "https://cdn.example.com/p?q=a+b&md5=a%20b+c",
+            "HTTPS://CDN.example.com/p?md5=1",
+            "https://cdn.example.com:/p?md5=1",
+            "https://cdn.example.com:0/p?md5=1",
+            "https://cdn.example.com:99999/p?md5=1",
+            "https://:80/p?md5=1",
+            "https:///p?md5=1",
+            "https://user@cdn/p?md5=1",
+            "https://[::1]/p?md5=1",
+            "ftp://x/p?md5=1",
+            " https://x/p?md5=1 ",
+            "https://x\\p?md5=1",
+            "https://x/测试?md5=1",
+            "https://x/p?md5=%zz",
+            "https://a..b/p?md5=1",
+            "https://x:8:9/p?md5=1",
+            "https://x?md5=1",
+            "https://x/p?md5=1&md5=2",
+            "https://x/p?m%2Bd5=1",
+            "https://x/p?a=b=c&md5=q=r",
+            "not a url",
+            "https://x/p?&&md5=7&",
+    };
+
+    @Test
+    public void queryParameter_readsPlainUrls() {
+        assertEquals("9e107d9d372bb6826bd81d3542a419d6", UrlQuery.queryParameter(CORPUS[0], "md5"));
+        assertEquals("720", UrlQuery.queryParameter(CORPUS[0], "w"));
+        assertEquals("a b c", UrlQuery.queryParameter("https://x/p?md5=a%20b+c", "md5"));
+        assertEquals("1", UrlQuery.queryParameter("https://x/p?md5=1&md5=2", "md5"));
+    }
+
+    @Test
+    public void queryParameter_returnsNullWithoutValue() {
+        assertNull(UrlQuery.queryParameter("https://x/p", "md5"));
+        assertNull(UrlQuery.queryParameter("https://x/p?md5", "md5"));
+        assertNull(UrlQuery.queryParameter("https://x/p#md5=1", "md5"));
+        assertNull(UrlQuery.queryParameter("not a url", "md5"));
+        assertNull(UrlQuery.queryParameter("ftp://x/p?md5=1", "md5"));
+    }
+
+    @Test
+    public void queryParameter_agreesWithHttpUrlOnCorpus() {
+        for (String url : CORPUS) {
+            assertSameAsHttpUrl(url);
+        }
+    }
+
+    @Test
+    public void queryParameter_agreesWithHttpUrlOnMutatedUrls() {
+        Random random = new Random(7);
+        String alphabet = "ab:/?#&=%+ .\\@[]5md";
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder url = new StringBuilder(CORPUS[random.nextInt(CORPUS.length)]);
+            int edits = 1 + random.nextInt(3);
+            for (int j = 0; j < edits; j++) {
+                int position = random.nextInt(url.length() + 1);
+                if (random.nextBoolean() && position < url.length()) {
+                    url.deleteCharAt(position);
+                } else {
+                    url.insert(position, alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertSameAsHttpUrl(url.toString());
+        }
+    }
+
+    private static void assertSameAsHttpUrl(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        String expected = httpUrl == null ? null : httpUrl.queryParameter("md5");
+        assertEquals(url, expected, UrlQuery.queryParameter(url, "md5"));
+    }
+}